@@ -0,0 +1,358 @@
+package com.jaewanyun.omoc;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/*
+ * The stones and turn of a game without any synchronization
+ * A board is confined to the thread that owns it (an engine, the server game loop or the renderer)
+ * Hand it to another thread only through copy(), snapshot() or a GameState
+ */
+public class Board implements Serializable {
+
+	private static final long serialVersionUID = 58120394812093L;
+	private final int[][] grid;
+	private int teamTurn; // White = positive; Black = negative
+	private final GameSettings settings;
+	private transient long[] hashes; // Zobrist style hash of the stones as seen under each Symmetry transform
+	private transient BoardSnapshot published; // Last snapshot handed out
+	private transient boolean[] stale; // Columns changed since the last snapshot
+	private transient boolean changed;
+
+	public Board(GameSettings settings) {
+		this.settings = settings;
+		grid = new int[settings.gridWidth][settings.gridHeight];
+		teamTurn = 1;
+		hashes = new long[Symmetry.COUNT];
+	}
+
+	/*
+	 * Deep copy sharing only the settings
+	 */
+	private Board(Board other) {
+		settings = other.settings;
+		grid = new int[other.grid.length][];
+		for(int j = 0; j < grid.length; j++)
+			grid[j] = other.grid[j].clone();
+		teamTurn = other.teamTurn;
+		hashes = other.hashes.clone();
+	}
+
+	public Board copy() {
+		return new Board(this);
+	}
+
+	public int width() {
+		return settings.gridWidth;
+	}
+
+	public int height() {
+		return settings.gridHeight;
+	}
+
+	public GameSettings settings() {
+		return settings;
+	}
+
+	public int get(int x, int y) {
+		return grid[x][y];
+	}
+
+	/*
+	 * Places a stone of the side to move if the cell is blank
+	 */
+	public void place(int x, int y) {
+		if(grid[x][y] == GameState.BLANK) {
+			int color = whosTurn();
+			grid[x][y] = color;
+			toggle(x, y, color);
+			touch(x);
+			advanceTurn();
+		}
+	}
+
+	public void set(int x, int y, int color) {
+		toggle(x, y, grid[x][y]);
+		toggle(x, y, color);
+		grid[x][y] = color;
+		touch(x);
+	}
+
+	public int whosTurn() {
+		if(teamTurn > 0)
+			return GameState.WHITE;
+		else if(teamTurn < 0)
+			return GameState.BLACK;
+		else
+			throw new IllegalStateException();
+	}
+
+	/**
+	 * Places a stone of the side to move
+	 *
+	 * @param x Column of the stone
+	 * @param y Row of the stone
+	 * @return An undo record to be handed back to unmakeMove
+	 * @throws IllegalArgumentException When the cell is not blank
+	 */
+	public long makeMove(int x, int y) {
+		int[] column = grid[x];
+		if(column[y] != GameState.BLANK)
+			throw new IllegalArgumentException();
+
+		long undo = ((long) teamTurn << 32) | ((long) (x & 0xFFFF) << 16) | (y & 0xFFFF);
+		int color = whosTurn();
+		column[y] = color;
+		toggle(x, y, color);
+		touch(x);
+		advanceTurn();
+		return undo;
+	}
+
+	/**
+	 * Takes back a move made with makeMove, restoring the cell, the turn counter and the hash
+	 * Moves must be unmade in the reverse order they were made
+	 *
+	 * @param undo The record returned by makeMove
+	 */
+	public void unmakeMove(long undo) {
+		int x = GameState.undoX(undo);
+		int y = GameState.undoY(undo);
+		toggle(x, y, grid[x][y]);
+		grid[x][y] = GameState.BLANK;
+		touch(x);
+		teamTurn = (int) (undo >> 32);
+	}
+
+	/**
+	 * The hash is maintained incrementally by every placement
+	 *
+	 * @return A hash of the stones on the board
+	 */
+	public long hash() {
+		return hashes[Symmetry.IDENTITY];
+	}
+
+	/**
+	 * Kept up to date with every placement, like the hash
+	 *
+	 * @param t A Symmetry transform
+	 * @return The hash of the stones as seen under transform t, or 0 if t does not apply to this board
+	 */
+	public long hash(int t) {
+		return hashes[t];
+	}
+
+	/**
+	 * @return The Symmetry transform taking this board to its canonical orientation
+	 */
+	public int canonicalTransform() {
+		return Symmetry.canonicalTransform(hashes, grid.length, grid.length == 0 ? 0 : grid[0].length);
+	}
+
+	/**
+	 * Equal for boards that are rotations or mirror images of each other with the same side to move
+	 *
+	 * @return The hash of the board in its canonical orientation
+	 */
+	public long canonicalHash() {
+		return hashes[canonicalTransform()] ^ Symmetry.turnKey(teamTurn);
+	}
+
+	/**
+	 * Publishes the board as an immutable snapshot that other threads may read without locking
+	 * Only columns changed since the previous snapshot are repacked; the rest are shared with it
+	 *
+	 * @return A snapshot of the board as it is now
+	 */
+	public BoardSnapshot snapshot() {
+		if(published != null && !changed && published.matches(teamTurn, settings))
+			return published;
+
+		long[][] columns = new long[grid.length][];
+		for(int j = 0; j < grid.length; j++) {
+			if(published != null && !stale[j])
+				columns[j] = published.packedColumn(j);
+			else
+				columns[j] = BoardSnapshot.pack(grid[j]);
+		}
+		published = new BoardSnapshot(columns, grid.length == 0 ? 0 : grid[0].length, teamTurn, hashes.clone(), settings);
+
+		if(stale == null)
+			stale = new boolean[grid.length];
+		else
+			Arrays.fill(stale, false);
+		changed = false;
+		return published;
+	}
+
+	/*
+	 * White = positive; Black = negative; the magnitude counts stones placed this turn
+	 */
+	public int turnCounter() {
+		return teamTurn;
+	}
+
+	/*
+	 * Restores a turn counter, e.g. when a board is rebuilt from a record of the game
+	 */
+	public void setTurnCounter(int teamTurn) {
+		if(teamTurn == 0)
+			throw new IllegalArgumentException();
+		this.teamTurn = teamTurn;
+	}
+
+	private void touch(int x) {
+		if(stale != null) {
+			stale[x] = true;
+			changed = true;
+		}
+	}
+
+	private void advanceTurn() {
+		if(teamTurn > 0) {
+			teamTurn++;
+			if(teamTurn > settings.stonesPerTurn)
+				teamTurn = -1;
+		}
+		else if(teamTurn < 0) {
+			teamTurn--;
+			if(Math.abs(teamTurn) > settings.stonesPerTurn)
+				teamTurn = 1;
+		}
+	}
+
+	/*
+	 * Adds or removes a stone in the hash of every orientation that applies to the board
+	 */
+	private void toggle(int x, int y, int color) {
+		if(color == GameState.BLANK)
+			return;
+		int width = grid.length;
+		int height = grid[x].length;
+		for(int t = 0; t < Symmetry.COUNT; t++) {
+			if(Symmetry.applies(t, width, height)) {
+				int cell = Symmetry.apply(t, x, y, width, height);
+				hashes[t] ^= zobrist(Symmetry.cellX(cell), Symmetry.cellY(cell), color);
+			}
+		}
+	}
+
+	/*
+	 * Key of a stone at a cell; blank cells hash to zero so that any board size works without a table
+	 */
+	static long zobrist(int x, int y, int color) {
+		if(color == GameState.BLANK)
+			return 0;
+		long z = ((long) x << 40) ^ ((long) y << 16) ^ color;
+		z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+		z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		return z ^ (z >>> 33);
+	}
+
+	/*
+	 * The hashes are not serialized; rebuild them from the grid
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		hashes = new long[Symmetry.COUNT];
+		for(int j = 0; j < grid.length; j++)
+			for(int k = 0; k < grid[j].length; k++)
+				toggle(j, k, grid[j][k]);
+	}
+
+	/*
+	 * Returns the integer corresponding to the winner
+	 * WHITE = 1
+	 * BLACK = 2
+	 */
+	public int checkStatus() {
+		for(int j = 0; j < grid.length - 1; j++) {
+			for(int k = 0; k < grid[j].length; k++) {
+				/*
+				 * Center
+				 */
+				if(grid[j][k] == GameState.BLANK) {
+					continue;
+				}
+				int currentStone = grid[j][k];
+
+
+				/*
+				 * North Eastward
+				 */
+				int connectedStones = 1;
+				int x = j;
+				int y = k;
+				while(y > 0 && x < grid.length - 2) {
+					if(grid[++x][--y] == currentStone) {
+						connectedStones++;
+					} else {
+						break;
+					}
+				}
+				if(connectedStones >= settings.stonesToWin) { // Win
+					return currentStone;
+				}
+
+
+				/*
+				 * Eastward
+				 */
+				connectedStones = 1;
+				x = j;
+				y = k;
+				while(x < grid.length - 2) {
+					if(grid[++x][y] == currentStone) {
+						connectedStones++;
+					} else {
+						break;
+					}
+				}
+				if(connectedStones >= settings.stonesToWin) { // Win
+					return currentStone;
+				}
+
+
+				/*
+				 * South Eastward
+				 */
+				connectedStones = 1;
+				x = j;
+				y = k;
+				while(y < grid[x].length - 2 && x < grid.length - 2) {
+					if(grid[++x][++y] == currentStone) {
+						connectedStones++;
+					} else {
+						break;
+					}
+				}
+				if(connectedStones >= settings.stonesToWin) { // Win
+					return currentStone;
+				}
+
+
+				/*
+				 * Southward
+				 */
+				connectedStones = 1;
+				x = j;
+				y = k;
+				while(y < grid[x].length - 2) {
+					if(grid[x][++y] == currentStone) {
+						connectedStones++;
+					} else {
+						break;
+					}
+				}
+				if(connectedStones >= settings.stonesToWin) { // Win
+					return currentStone;
+				}
+			}
+		}
+
+		return 0; // No winner
+	}
+}
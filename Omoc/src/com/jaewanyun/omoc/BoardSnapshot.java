@@ -0,0 +1,248 @@
+package com.jaewanyun.omoc;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/*
+ * An immutable view of a Board at one instant
+ * Cells are packed two bits each into one long array per column
+ * Consecutive snapshots of the same board share the arrays of every column that did not change
+ * Snapshots may be held, cached and read by any thread without locking
+ */
+public final class BoardSnapshot implements Serializable {
+
+	private static final long serialVersionUID = 7730912283746113L;
+	private static final int CELLS_PER_WORD = 32;
+	private final long[][] columns; // Never written after construction
+	private final int width;
+	private final int height;
+	private final int teamTurn;
+	private final long[] hashes; // Indexed by Symmetry transform; never written after construction
+	private final int stonesPerTurn;
+	private final int stonesToWin;
+	private final int secondsAllotted;
+
+	BoardSnapshot(long[][] columns, int height, int teamTurn, long[] hashes, GameSettings settings) {
+		this(columns, height, teamTurn, hashes, settings.stonesPerTurn, settings.stonesToWin, settings.secondsAllotted);
+	}
+
+	private BoardSnapshot(long[][] columns, int height, int teamTurn, long[] hashes, int stonesPerTurn, int stonesToWin, int secondsAllotted) {
+		this.columns = columns;
+		this.width = columns.length;
+		this.height = height;
+		this.teamTurn = teamTurn;
+		this.hashes = hashes;
+		this.stonesPerTurn = stonesPerTurn;
+		this.stonesToWin = stonesToWin;
+		this.secondsAllotted = secondsAllotted;
+	}
+
+	/*
+	 * Packs a column of cells into two bits per cell
+	 */
+	static long[] pack(int[] column) {
+		long[] packed = new long[(column.length + CELLS_PER_WORD - 1) / CELLS_PER_WORD];
+		for(int k = 0; k < column.length; k++)
+			packed[k >>> 5] |= (long) (column[k] & 3) << ((k & 31) << 1);
+		return packed;
+	}
+
+	public int width() {
+		return width;
+	}
+
+	public int height() {
+		return height;
+	}
+
+	public int get(int x, int y) {
+		return (int) (columns[x][y >>> 5] >>> ((y & 31) << 1)) & 3;
+	}
+
+	public int whosTurn() {
+		return teamTurn > 0 ? GameState.WHITE : GameState.BLACK;
+	}
+
+	public long hash() {
+		return hashes[Symmetry.IDENTITY];
+	}
+
+	/*
+	 * Hash of the stones as seen under Symmetry transform t, or 0 if t does not apply to this board
+	 */
+	public long hash(int t) {
+		return hashes[t];
+	}
+
+	public int turnCounter() {
+		return teamTurn;
+	}
+
+	/*
+	 * True if no stone is on the board; checks 32 cells per word
+	 */
+	public boolean isEmpty() {
+		for(int j = 0; j < width; j++)
+			for(long word : columns[j])
+				if(word != 0)
+					return false;
+		return true;
+	}
+
+	public int stonesPerTurn() {
+		return stonesPerTurn;
+	}
+
+	public int stonesToWin() {
+		return stonesToWin;
+	}
+
+	public int secondsAllotted() {
+		return secondsAllotted;
+	}
+
+	public int wordsPerColumn() {
+		return (height + CELLS_PER_WORD - 1) / CELLS_PER_WORD;
+	}
+
+	/*
+	 * A word of packed cells; cell y of column x is at bits 2 * (y % 32) of word y / 32
+	 */
+	public long word(int x, int index) {
+		return columns[x][index];
+	}
+
+	/**
+	 * Columns are shared between snapshots of the same board, so an identical reference means no cell in it changed
+	 * Otherwise the packed words are compared, 32 cells at a time
+	 *
+	 * @param other An earlier snapshot
+	 * @param x The column to compare
+	 * @return True if column x holds the same stones in both snapshots
+	 */
+	public boolean sameColumn(BoardSnapshot other, int x) {
+		if(other == null || x >= other.width)
+			return false;
+		return columns[x] == other.columns[x] || Arrays.equals(columns[x], other.columns[x]);
+	}
+
+	boolean matches(int teamTurn, GameSettings settings) {
+		return this.teamTurn == teamTurn
+				&& stonesPerTurn == settings.stonesPerTurn
+				&& stonesToWin == settings.stonesToWin
+				&& secondsAllotted == settings.secondsAllotted;
+	}
+
+	long[] hashes() {
+		return hashes;
+	}
+
+	long[] packedColumn(int x) {
+		return columns[x];
+	}
+
+	/**
+	 * Turns the board with bit operations on the packed columns
+	 * Mirroring across x reorders the column arrays and shares them with this snapshot,
+	 * mirroring across y reverses the cells of each column two bits at a time,
+	 * and swapping x and y visits only the stones on the board
+	 *
+	 * @param t A Symmetry transform that applies to this board
+	 * @return This board as seen under transform t
+	 * @throws IllegalArgumentException When t swaps x and y and the board is not square
+	 */
+	public BoardSnapshot transform(int t) {
+		if(!Symmetry.applies(t, width, height))
+			throw new IllegalArgumentException("Transform " + t + " on a " + width + " by " + height + " board");
+		if(t == Symmetry.IDENTITY)
+			return this;
+
+		long[][] turned = columns;
+		int turnedHeight = height;
+		if((t & Symmetry.SWAP) != 0) {
+			turned = transpose(columns, height);
+			turnedHeight = width;
+		}
+		if((t & Symmetry.FLIP_Y) != 0) {
+			long[][] mirrored = new long[turned.length][];
+			for(int j = 0; j < turned.length; j++)
+				mirrored[j] = reverse(turned[j], turnedHeight);
+			turned = mirrored;
+		}
+		if((t & Symmetry.FLIP_X) != 0) {
+			long[][] mirrored = new long[turned.length][];
+			for(int j = 0; j < turned.length; j++)
+				mirrored[j] = turned[turned.length - 1 - j];
+			turned = mirrored;
+		}
+
+		// Seen under s, the turned board is this board seen under s after t
+		long[] turnedHashes = new long[Symmetry.COUNT];
+		for(int s = 0; s < Symmetry.COUNT; s++)
+			if(Symmetry.applies(s, turned.length, turnedHeight))
+				turnedHashes[s] = hashes[Symmetry.compose(s, t)];
+		return new BoardSnapshot(turned, turnedHeight, teamTurn, turnedHashes, stonesPerTurn, stonesToWin, secondsAllotted);
+	}
+
+	/*
+	 * Swaps x and y, visiting only the non-blank cells of each word
+	 */
+	private static long[][] transpose(long[][] columns, int height) {
+		long[][] transposed = new long[height][(columns.length + CELLS_PER_WORD - 1) / CELLS_PER_WORD];
+		for(int j = 0; j < columns.length; j++) {
+			for(int index = 0; index < columns[j].length; index++) {
+				long word = columns[j][index];
+				while(word != 0) {
+					int bit = Long.numberOfTrailingZeros(word) & ~1;
+					int k = (index << 5) + (bit >>> 1);
+					transposed[k][j >>> 5] |= ((word >>> bit) & 3) << ((j & 31) << 1);
+					word &= ~(3L << bit);
+				}
+			}
+		}
+		return transposed;
+	}
+
+	/*
+	 * Cell y of the result is cell height - 1 - y of the column
+	 * The words are reversed in order and two bits at a time, then shifted down past the unused cells of the last word
+	 */
+	private static long[] reverse(long[] column, int height) {
+		int words = column.length;
+		long[] reversed = new long[words];
+		for(int index = 0; index < words; index++) {
+			long word = Long.reverse(column[words - 1 - index]);
+			reversed[index] = ((word >>> 1) & 0x5555555555555555L) | ((word & 0x5555555555555555L) << 1);
+		}
+		int unused = (words * CELLS_PER_WORD - height) << 1;
+		if(unused > 0) {
+			for(int index = 0; index < words; index++) {
+				long next = index + 1 < words ? reversed[index + 1] : 0;
+				reversed[index] = (reversed[index] >>> unused) | (next << (64 - unused));
+			}
+		}
+		return reversed;
+	}
+
+	/**
+	 * Thaws this snapshot into a new mutable board with its own settings
+	 *
+	 * @return A board private to the caller
+	 */
+	public Board toBoard() {
+		GameSettings settings = new GameSettings();
+		settings.gridWidth = width;
+		settings.gridHeight = height;
+		settings.stonesPerTurn = stonesPerTurn;
+		settings.stonesToWin = stonesToWin;
+		settings.secondsAllotted = secondsAllotted;
+
+		Board board = new Board(settings);
+		for(int j = 0; j < width; j++)
+			for(int k = 0; k < height; k++)
+				if(get(j, k) != GameState.BLANK)
+					board.set(j, k, get(j, k));
+		board.setTurnCounter(teamTurn);
+		return board;
+	}
+}
@@ -2,21 +2,28 @@ package com.jaewanyun.omoc;
 
 import java.io.Serializable;
 
+/*
+ * A synchronized wrapper around a Board for state shared between threads
+ * Single owner contexts should work on a Board directly
+ */
 public class GameState implements Serializable {
 
-	private static final long serialVersionUID = 31387291827391L;
+	private static final long serialVersionUID = 31387291827392L;
 	public static final int BLANK = 0;
 	public static final int WHITE = 1;
 	public static final int BLACK = 2;
-	private volatile int[][] board;
-	private volatile int teamTurn; // White = positive; Black = negative
-	private GameSettings gameSettings;
+	private final Board board; // Guarded by this
 	private int id;
 
 	public GameState(int id) {
-		gameSettings = new GameSettings();
-		board = new int[gameSettings.gridWidth][gameSettings.gridHeight];
-		teamTurn = 1;
+		this(id, new Board(new GameSettings()));
+	}
+
+	/*
+	 * Takes ownership of the board
+	 */
+	public GameState(int id, Board board) {
+		this.board = board;
 		this.id = id;
 	}
 
@@ -25,52 +32,125 @@ public class GameState implements Serializable {
 	}
 
 	public int width() {
-		return gameSettings.gridWidth;
+		return board.width();
 	}
 
 	public int height() {
-		return gameSettings.gridHeight;
+		return board.height();
 	}
 
 	public synchronized int getBoard(int x, int y) {
-		return board[x][y];
+		return board.get(x, y);
 	}
 
 	public synchronized void setBoard(int x, int y) {
-		if(board[x][y] == 0) {
-			board[x][y] = whosTurn();
-			nextTurn();
-		}
+		board.place(x, y);
 	}
 
 	public synchronized void setBoard(int x, int y, int color) {
-		board[x][y] = color;
+		board.set(x, y, color);
 	}
 
 	public synchronized int whosTurn() {
-		if(teamTurn > 0)
-			return WHITE;
-		else if(teamTurn < 0)
-			return BLACK;
-		else
-			throw new IllegalStateException();
-	}
-
-	private synchronized void nextTurn() {
-		if(teamTurn > 0) {
-			teamTurn++;
-			if(teamTurn > gameSettings.stonesPerTurn)
-				teamTurn = -1;
-		}
-		else if(teamTurn < 0) {
-			teamTurn--;
-			if(Math.abs(teamTurn) > gameSettings.stonesPerTurn)
-				teamTurn = 1;
-		}
+		return board.whosTurn();
+	}
+
+	/**
+	 * Copies this state so that a search can own it exclusively
+	 *
+	 * @return A deep copy sharing only the settings
+	 */
+	public synchronized GameState copy() {
+		return new GameState(id, board.copy());
+	}
+
+	/**
+	 * Publishes the current board to the calling thread with a single lock acquisition
+	 * The returned board is private to the caller and may be read without synchronization
+	 *
+	 * @return A copy of the board
+	 */
+	public synchronized Board copyBoard() {
+		return board.copy();
+	}
+
+	/**
+	 * Readers such as the renderer should hold the snapshot instead of the lock
+	 *
+	 * @return An immutable snapshot of the board
+	 */
+	public synchronized BoardSnapshot snapshot() {
+		return board.snapshot();
+	}
+
+	/**
+	 * Places a stone of the side to move without synchronizing
+	 * Only the thread owning this state (e.g. a search working on a copy) may call this
+	 *
+	 * @param x Column of the stone
+	 * @param y Row of the stone
+	 * @return An undo record to be handed back to unmakeMove
+	 * @throws IllegalArgumentException When the cell is not blank
+	 */
+	public long makeMove(int x, int y) {
+		return board.makeMove(x, y);
+	}
+
+	/**
+	 * Takes back a move made with makeMove, restoring the cell, the turn counter and the hash
+	 * Moves must be unmade in the reverse order they were made
+	 *
+	 * @param undo The record returned by makeMove
+	 */
+	public void unmakeMove(long undo) {
+		board.unmakeMove(undo);
+	}
+
+	/**
+	 * The hash is maintained incrementally by every placement
+	 *
+	 * @return A hash of the stones on the board
+	 */
+	public synchronized long hash() {
+		return board.hash();
+	}
+
+	/**
+	 * Equal for states that are rotations or mirror images of each other with the same side to move
+	 *
+	 * @return The hash of the board in its canonical orientation
+	 */
+	public synchronized long canonicalHash() {
+		return board.canonicalHash();
+	}
+
+	/**
+	 * Moves found on the canonical board are mapped back with Symmetry.toOriginal
+	 *
+	 * @return The Symmetry transform taking the board to its canonical orientation
+	 */
+	public synchronized int canonicalTransform() {
+		return board.canonicalTransform();
+	}
+
+	/**
+	 * @param undo A record returned by makeMove
+	 * @return The column of the move
+	 */
+	public static int undoX(long undo) {
+		return (int) (undo >>> 16) & 0xFFFF;
+	}
+
+	/**
+	 * @param undo A record returned by makeMove
+	 * @return The row of the move
+	 */
+	public static int undoY(long undo) {
+		return (int) undo & 0xFFFF;
 	}
 
 	public GameSettings getSettings() {
-		return gameSettings;
+		return board.settings();
 	}
 
 	/*
@@ -79,90 +159,6 @@ public class GameState implements Serializable {
 	 * BLACK = 2
 	 */
 	public synchronized int checkStatus() {
-		for(int j = 0; j < board.length - 1; j++) {
-			for(int k = 0; k < board[j].length; k++) {
-				/*
-				 * Center
-				 */
-				if(board[j][k] == BLANK) {
-					continue;
-				}
-				int currentStone = board[j][k];
-
-
-				/*
-				 * North Eastward
-				 */
-				int connectedStones = 1;
-				int x = j;
-				int y = k;
-				while(y > 0 && x < board.length - 2) {
-					if(board[++x][--y] == currentStone) {
-						connectedStones++;
-					} else {
-						break;
-					}
-				}
-				if(connectedStones >= gameSettings.stonesToWin) { // Win
-					return currentStone;
-				}
-
-
-				/*
-				 * Eastward
-				 */
-				connectedStones = 1;
-				x = j;
-				y = k;
-				while(x < board.length - 2) {
-					if(board[++x][y] == currentStone) {
-						connectedStones++;
-					} else {
-						break;
-					}
-				}
-				if(connectedStones >= gameSettings.stonesToWin) { // Win
-					return currentStone;
-				}
-
-
-				/*
-				 * South Eastward
-				 */
-				connectedStones = 1;
-				x = j;
-				y = k;
-				while(y < board[x].length - 2 && x < board.length - 2) {
-					if(board[++x][++y] == currentStone) {
-						connectedStones++;
-					} else {
-						break;
-					}
-				}
-				if(connectedStones >= gameSettings.stonesToWin) { // Win
-					return currentStone;
-				}
-
-
-				/*
-				 * Southward
-				 */
-				connectedStones = 1;
-				x = j;
-				y = k;
-				while(y < board[x].length - 2) {
-					if(board[x][++y] == currentStone) {
-						connectedStones++;
-					} else {
-						break;
-					}
-				}
-				if(connectedStones >= gameSettings.stonesToWin) { // Win
-					return currentStone;
-				}
-			}
-		}
-
-		return 0; // No winner
+		return board.checkStatus();
 	}
 }
\ No newline at end of file
@@ -1,11 +1,101 @@
 package com.jaewanyun.omoc;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import javax.management.JMException;
+
 import com.jaewanyun.omoc.gui.MainFrame;
+import com.jaewanyun.omoc.net.Admission;
+import com.jaewanyun.omoc.net.Metrics;
+import com.jaewanyun.omoc.net.Server;
+import com.jaewanyun.omoc.net.TcpTransport;
+import com.jaewanyun.omoc.net.Transport;
+import com.jaewanyun.omoc.net.UnixTransport;
+import com.jaewanyun.omoc.store.ServerStateStore;
 
 public class Main {
 	public static void main(String[] args) {
+		if(args.length > 0 && args[0].equals("server")) {
+			startServer(args);
+			return;
+		}
+		if(args.length > 0 && args[0].equals("relay")) {
+			startRelay(args);
+			return;
+		}
+
 		MainFrame.createMainFrame("Omoc");
+	}
+
+	/*
+	 * relay [port] [upstream name] [upstream port] [seconds between metric dumps]
+	 * Relays a server to spectators connected to this process; relays may be chained
+	 * Either port may be unix:(path) for a Unix domain socket, in which case the upstream name is ignored
+	 */
+	private static void startRelay(String[] args) {
+		Transport transport = transport(null, args.length > 1 ? args[1] : "19204");
+		String upstreamName = args.length > 2 ? args[2] : "localhost";
+		Transport upstream = transport(upstreamName, args.length > 3 ? args[3] : "19203");
+		Server relay = Server.getRelay(transport, upstream, true);
+		Runtime.getRuntime().addShutdownHook(new Thread(relay::shutdown));
+		startMetrics(args.length > 4 ? Integer.parseInt(args[4]) : 0);
+	}
+
+	/*
+	 * server [port] [state directory] [seconds between metric dumps] [acceptor threads]
+	 * Recovers the games of the previous run before accepting connections
+	 * The port may be unix:(path) to listen on a Unix domain socket instead
+	 */
+	private static void startServer(String[] args) {
+		Transport transport = transport(null, args.length > 1 ? args[1] : "19203");
+		String directory = args.length > 2 ? args[2] : "omoc-server";
+
+		try {
+			ServerStateStore store = new ServerStateStore(Paths.get(directory), 10000);
+			store.recover();
+
+			int acceptors = args.length > 4 ? Integer.parseInt(args[4]) : 1;
+			Server myServer = Server.getServer(transport, true, Admission.DEFAULT, acceptors);
+			store.attach(myServer);
+			startMetrics(args.length > 3 ? Integer.parseInt(args[3]) : 0);
+
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				myServer.shutdown();
+				try {
+					store.close();
+				} catch (IOException ioe) {
+					// TODO: Handle
+					System.out.println("Could not checkpoint on shutdown");
+				}
+			}));
+		} catch (IOException ioe) {
+			// TODO: Handle
+			System.out.println("Could not recover server state: " + ioe.getMessage());
+			System.exit(-1);
+		}
+	}
+
+	/*
+	 * A port number, or unix:(path) for a Unix domain socket
+	 */
+	private static Transport transport(String host, String port) {
+		if(port.startsWith("unix:"))
+			return new UnixTransport(Paths.get(port.substring("unix:".length())));
+		return new TcpTransport(host, Integer.parseInt(port));
+	}
 
-		//		Server myServer = Server.getServer(19203, true);
+	/*
+	 * Metrics are always readable over JMX; a dump is printed only if a period is given
+	 */
+	private static void startMetrics(int seconds) {
+		try {
+			Metrics.shared().registerMBean();
+		} catch (JMException jme) {
+			// TODO: Handle
+			System.out.println("Could not register metrics: " + jme.getMessage());
+		}
+		if(seconds > 0)
+			Metrics.shared().startDump(seconds * 1000L, System.out);
 	}
 }
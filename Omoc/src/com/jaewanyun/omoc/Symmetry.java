@@ -0,0 +1,133 @@
+package com.jaewanyun.omoc;
+
+/*
+ * The symmetries of a board and the canonical orientation of a position
+ * Transform t swaps x and y if bit 4 is set, then mirrors x if bit 1 is set and y if bit 2 is set
+ * Transforms that swap x and y only apply to square boards
+ */
+public final class Symmetry {
+
+	public static final int COUNT = 8;
+	public static final int IDENTITY = 0;
+	static final int FLIP_X = 1;
+	static final int FLIP_Y = 2;
+	static final int SWAP = 4;
+	private static final int[][] COMPOSE = composeTable();
+
+	private Symmetry() {throw new UnsupportedOperationException();}
+
+	/*
+	 * Whether a transform maps a width by height board onto itself
+	 */
+	public static boolean applies(int t, int width, int height) {
+		return (t & SWAP) == 0 || width == height;
+	}
+
+	/*
+	 * Packs a cell as x << 16 | y
+	 */
+	public static int cell(int x, int y) {
+		return x << 16 | y;
+	}
+
+	public static int cellX(int cell) {
+		return cell >>> 16;
+	}
+
+	public static int cellY(int cell) {
+		return cell & 0xFFFF;
+	}
+
+	/*
+	 * Maps a cell of a width by height board under transform t
+	 */
+	public static int apply(int t, int x, int y, int width, int height) {
+		if((t & SWAP) != 0) {
+			int swap = x;
+			x = y;
+			y = swap;
+		}
+		if((t & FLIP_X) != 0)
+			x = width - 1 - x;
+		if((t & FLIP_Y) != 0)
+			y = height - 1 - y;
+		return cell(x, y);
+	}
+
+	/*
+	 * The transform undoing t
+	 */
+	public static int inverse(int t) {
+		if((t & SWAP) == 0)
+			return t;
+		return SWAP | (t & FLIP_X) << 1 | (t & FLIP_Y) >> 1;
+	}
+
+	/*
+	 * The transform doing t and then s
+	 */
+	public static int compose(int s, int t) {
+		return COMPOSE[s][t];
+	}
+
+	/*
+	 * Found by following one cell off every axis of a 5 by 5 board, whose 8 images are distinct
+	 */
+	private static int[][] composeTable() {
+		int[][] table = new int[COUNT][COUNT];
+		for(int s = 0; s < COUNT; s++) {
+			for(int t = 0; t < COUNT; t++) {
+				int image = apply(t, 0, 1, 5, 5);
+				image = apply(s, cellX(image), cellY(image), 5, 5);
+				for(int u = 0; u < COUNT; u++)
+					if(apply(u, 0, 1, 5, 5) == image)
+						table[s][t] = u;
+			}
+		}
+		return table;
+	}
+
+	/*
+	 * The transform giving the smallest hash; ties go to the lowest transform so that symmetric positions agree
+	 */
+	static int canonicalTransform(long[] hashes, int width, int height) {
+		int best = IDENTITY;
+		for(int t = 1; t < COUNT; t++)
+			if(applies(t, width, height) && Long.compareUnsigned(hashes[t], hashes[best]) < 0)
+				best = t;
+		return best;
+	}
+
+	/*
+	 * Reads the hashes kept by the snapshot rather than scanning the board
+	 */
+	public static int canonicalTransform(BoardSnapshot board) {
+		return canonicalTransform(board.hashes(), board.width(), board.height());
+	}
+
+	/*
+	 * Equal for positions that are symmetric to each other, including whose turn it is
+	 */
+	public static long canonicalHash(BoardSnapshot board) {
+		return board.hash(canonicalTransform(board)) ^ turnKey(board.turnCounter());
+	}
+
+	/*
+	 * The position turned into its canonical orientation
+	 */
+	public static BoardSnapshot canonical(BoardSnapshot board) {
+		return board.transform(canonicalTransform(board));
+	}
+
+	/*
+	 * Maps a cell of the canonical orientation back onto the board as it was oriented before transform t
+	 */
+	public static int toOriginal(int t, int cell, int width, int height) {
+		return apply(inverse(t), cellX(cell), cellY(cell), width, height);
+	}
+
+	static long turnKey(int turnCounter) {
+		long z = turnCounter * 0x9E3779B97F4A7C15L;
+		return z ^ (z >>> 29);
+	}
+}
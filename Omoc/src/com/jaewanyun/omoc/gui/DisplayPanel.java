@@ -1,86 +1,147 @@
 package com.jaewanyun.omoc.gui;
 
 import java.awt.Color;
+import java.awt.Cursor;
 import java.awt.Dimension;
-import java.awt.GridLayout;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 
-import javax.swing.BorderFactory;
-import javax.swing.JButton;
 import javax.swing.JPanel;
 
+import com.jaewanyun.omoc.BoardSnapshot;
 import com.jaewanyun.omoc.GameState;
 
+/*
+ * Paints the board from a snapshot
+ * Cell (j, k) is drawn in row j counted from the bottom and column k counted from the left
+ */
 public class DisplayPanel extends JPanel {
 
 	private static final long serialVersionUID = 1L;
-	private static JButton[][] buttons;
+	private static final Color BACKGROUND = new Color(60, 80, 90);
+	private static final Color GRID = new Color(51, 102, 153);
+	private static final Color BLANK = new Color(205, 205, 150);
+	private volatile BoardSnapshot snapshot;
+	private boolean clickable; // Whether the cursor currently shows that a move can be made
 
 	public DisplayPanel() {
 		super();
 		setPreferredSize(new Dimension(500, 500));
 
-		setBackground(new Color(60, 80, 90));
+		setBackground(BACKGROUND);
+		addMouseListener(new BoardListener());
 	}
 
 	public void update(GameState gameState) {
-
-		int width = gameState.width();
-		int height = gameState.height();
-
-		setLayout(new GridLayout(width, height));
-
-		if(buttons == null) {
-			buttons = new JButton[width][height];
+		BoardSnapshot previous = snapshot;
+		BoardSnapshot current = gameState.snapshot();
+		snapshot = current;
+
+		// Only touch the cursor when the side to move actually changes
+		boolean turn = myTurn(current);
+		if(turn != clickable) {
+			clickable = turn;
+			setCursor(Cursor.getPredefinedCursor(turn ? Cursor.HAND_CURSOR : Cursor.DEFAULT_CURSOR));
 		}
 
-		for(int j = 0; j < width; j++) {
-			for(int k = 0; k < height; k++) {
-				if(buttons[j][k] == null) { // Initialize buttons if they have not been
-					buttons[j][k] = new JButton("");
-					buttons[j][k].setToolTipText(null);
-					buttons[j][k].setBorder(BorderFactory.createLineBorder(new Color(51, 102, 153)));
-					buttons[j][k].addActionListener(new ButtonListener(j, k));
-					buttons[j][k].setEnabled(false);
-					add(buttons[j][k], j, k);
-				}
+		if(previous == null || previous.width() != current.width() || previous.height() != current.height()) {
+			repaint();
+			return;
+		}
 
-				if (MainFrame.playingWhite() && gameState.whosTurn() == GameState.WHITE) {
-					buttons[j][k].setEnabled(true);
-				} else if (!MainFrame.playingWhite() && gameState.whosTurn() == GameState.BLACK) {
-					buttons[j][k].setEnabled(true);
-				} else {
-					buttons[j][k].setEnabled(false);
+		/*
+		 * Diff against what was last painted
+		 * Unchanged lines of cells are skipped by comparing their packed words
+		 */
+		Rectangle dirty = null;
+		Rectangle bounds = new Rectangle();
+		for(int j = 0; j < current.width(); j++) {
+			if(current.sameColumn(previous, j))
+				continue;
+			for(int k = 0; k < current.height(); k++) {
+				if(previous.get(j, k) != current.get(j, k)) {
+					cellBounds(current, j, k, bounds);
+					if(dirty == null)
+						dirty = new Rectangle(bounds);
+					else
+						dirty.add(bounds);
 				}
+			}
+			// One repaint request per changed line of cells
+			if(dirty != null) {
+				repaint(dirty);
+				dirty = null;
+			}
+		}
+	}
 
-				int stoneColor = gameState.getBoard(j, k);
-				if(stoneColor == GameState.BLANK)
-					buttons[j][k].setBackground(new Color(205, 205, 150));
-				else if(stoneColor == GameState.WHITE)
-					buttons[j][k].setBackground(Color.WHITE);
+	@Override
+	protected void paintComponent(Graphics g) {
+		super.paintComponent(g);
+
+		BoardSnapshot board = snapshot;
+		if(board == null)
+			return;
+
+		Rectangle clip = g.getClipBounds();
+		Rectangle bounds = new Rectangle();
+		for(int j = 0; j < board.width(); j++) {
+			for(int k = 0; k < board.height(); k++) {
+				cellBounds(board, j, k, bounds);
+				if(clip != null && !clip.intersects(bounds))
+					continue;
+
+				int stoneColor = board.get(j, k);
+				if(stoneColor == GameState.WHITE)
+					g.setColor(Color.WHITE);
 				else if(stoneColor == GameState.BLACK)
-					buttons[j][k].setBackground(Color.BLACK);
+					g.setColor(Color.BLACK);
+				else
+					g.setColor(BLANK);
+				g.fillRect(bounds.x, bounds.y, bounds.width, bounds.height);
 
+				g.setColor(GRID);
+				g.drawRect(bounds.x, bounds.y, bounds.width - 1, bounds.height - 1);
 			}
 		}
+	}
 
-
-		revalidate();
-		repaint();
+	/*
+	 * Computes the pixel bounds of a cell into the given rectangle
+	 */
+	private Rectangle cellBounds(BoardSnapshot board, int j, int k, Rectangle bounds) {
+		int rows = board.width();
+		int columns = board.height();
+		int row = rows - 1 - j;
+
+		int left = k * getWidth() / columns;
+		int top = row * getHeight() / rows;
+		bounds.setBounds(left, top, (k + 1) * getWidth() / columns - left, (row + 1) * getHeight() / rows - top);
+		return bounds;
 	}
 
-	class ButtonListener implements ActionListener {
-		int j;
-		int k;
+	private boolean myTurn(BoardSnapshot board) {
+		if(MainFrame.playingWhite())
+			return board.whosTurn() == GameState.WHITE;
+		else
+			return board.whosTurn() == GameState.BLACK;
+	}
 
-		public ButtonListener(int j, int k) {
-			super();
-			this.j = j;
-			this.k = k;
-		}
+	class BoardListener extends MouseAdapter {
 		@Override
-		public void actionPerformed(ActionEvent e) {
+		public void mousePressed(MouseEvent e) {
+			BoardSnapshot board = snapshot;
+			if(board == null || !myTurn(board) || getWidth() == 0 || getHeight() == 0)
+				return;
+
+			// Map the click to a cell arithmetically
+			int k = e.getX() * board.height() / getWidth();
+			int j = board.width() - 1 - e.getY() * board.width() / getHeight();
+			if(j < 0 || j >= board.width() || k < 0 || k >= board.height())
+				return;
+
 			MainFrame.getGameState().setBoard(j, k);
 			DisplayPanel.this.update(MainFrame.getGameState());
 			MainFrame.send(MainFrame.getGameState());
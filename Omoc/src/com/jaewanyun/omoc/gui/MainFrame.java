@@ -1,27 +1,40 @@
 package com.jaewanyun.omoc.gui;
 
 import java.awt.BorderLayout;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Random;
 
 import javax.swing.JFrame;
 
 import com.jaewanyun.omoc.GameState;
+import com.jaewanyun.omoc.Symmetry;
 import com.jaewanyun.omoc.net.Client;
+import com.jaewanyun.omoc.net.Command;
+import com.jaewanyun.omoc.net.CommandRegistry;
 import com.jaewanyun.omoc.net.JayList;
+import com.jaewanyun.omoc.net.Trace;
+import com.jaewanyun.omoc.net.Traced;
+import com.jaewanyun.omoc.store.GameRecorder;
+import com.jaewanyun.omoc.store.OpeningBook;
 
 public class MainFrame extends JFrame {
 
 	private static final long serialVersionUID = 1L;
 	private static DisplayPanel displayPanel;
 	private static TextPanel chatPanel;
-	private static GameState gameState;
-	private static int id;
+	private static UiDispatcher dispatcher;
+	private static GameRecorder recorder;
+	private static OpeningBook book;
+	private static final CommandRegistry commands = createCommands();
+	private static volatile GameState gameState; // Replaced by the network thread, read by the EDT
 	private static String name;
 	private static boolean playingWhite;
 	@SuppressWarnings("rawtypes")
 	private static JayList in;
-	@SuppressWarnings("rawtypes")
-	private static JayList out;
+	private static Client client;
 	private static MainFrame mainFrame;
 
 	public static MainFrame createMainFrame(String title) {
@@ -37,11 +50,40 @@ public class MainFrame extends JFrame {
 		chatPanel = new TextPanel();
 		add(chatPanel, BorderLayout.SOUTH);
 
-		id = connect();
+		dispatcher = new UiDispatcher(displayPanel);
+
+		// Keep a journal of every game seen by this client
+		try {
+			recorder = new GameRecorder(Paths.get(System.getProperty("user.home"), ".omoc", "games"));
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				try {
+					recorder.close();
+				} catch (IOException ioe) {
+					// TODO: Handle
+					System.out.println("Could not close game journals");
+				}
+			}));
+		} catch (IOException ioe) {
+			// TODO: Handle
+			System.out.println("Games will not be recorded: " + ioe.getMessage());
+		}
+
+		// Hints are answered from the opening book if one has been built
+		Path bookPath = Paths.get(System.getProperty("user.home"), ".omoc", "book.omb");
+		if(Files.exists(bookPath)) {
+			try {
+				book = new OpeningBook(bookPath);
+			} catch (IOException ioe) {
+				// TODO: Handle
+				System.out.println("Could not open the opening book: " + ioe.getMessage());
+			}
+		}
+
+		connect();
 
 		if(gameState == null) {
-			gameState = new GameState(id);
-			displayPanel.update(gameState);
+			gameState = new GameState(getId());
+			dispatcher.render(gameState);
 		}
 
 		send(gameState);
@@ -55,8 +97,11 @@ public class MainFrame extends JFrame {
 		return gameState;
 	}
 
+	/*
+	 * Read from the client each time, since a session that could not be resumed after a lost connection gets a new id
+	 */
 	static int getId() {
-		return id;
+		return client.id();
 	}
 
 	static String getNametag() {
@@ -76,16 +121,187 @@ public class MainFrame extends JFrame {
 	}
 
 	static void reset() {
-		gameState = new GameState(id);
+		gameState = new GameState(getId());
 	}
 
 	static void delete(int x, int y) {
 		gameState.setBoard(x, y, 0);
 	}
 
+	/*
+	 * Commands are routed by name; board and settings changes are made by the sender, who then sends the new state
+	 */
+	private static CommandRegistry createCommands() {
+		CommandRegistry registry = new CommandRegistry();
+
+		/*
+		 * View help
+		 */
+		registry.register("help", command -> {
+			serverMessage("Server: Welcome!\n"
+					+ "Possible commands are listed below:\n"
+					+ "reset > resets the game board\n"
+					+ "delete > deletes a grid; (bottom left: 0 0, one higher: 1 0)\n"
+					+ "name (desired name) > sets your name; e.g. name Steve\n"
+					+ "set (white/black) > sets your color in game; e.g. set black\n"
+					+ "stones (number of stones per turn) > sets the game setting; e.g. stones 2\n"
+					+ "towin (number of stones aligned to win) > sets the game setting; e.g. towin 7\n"
+					+ "hint > suggests the move played most often from here in past games\n"
+					+ "trace > shows where the time went between moves and the screen; needs -Domoc.trace=true"
+					+ "");
+			return null;
+		});
+
+		/*
+		 * Resets a grid block to default
+		 */
+		registry.register("delete", command -> {
+			int x = command.intArg(0);
+			int y = command.intArg(1);
+			if(isMine(command)) {
+				delete(x, y);
+				send(gameState);
+			}
+			return null;
+		});
+
+		/*
+		 * Reset the game
+		 */
+		registry.register("reset", command -> {
+			if(isMine(command)) {
+				reset();
+				send(gameState);
+			}
+			return null;
+		});
+
+		/*
+		 * Set nametag
+		 */
+		registry.register("name", command -> {
+			if(isMine(command) && command.argCount() > 0)
+				introduce(command.argsFrom(0));
+			return null;
+		});
+
+		/*
+		 * Set color
+		 */
+		registry.register("set", command -> {
+			boolean white = command.argCount() > 0 && command.arg(0).equals("white");
+			if(isMine(command))
+				playingWhite = white;
+			serverMessage(white ? "Server: Okay, mister." : "Server: No.");
+			return null;
+		});
+
+		/*
+		 * Game settings
+		 */
+		registry.register("stones", command -> {
+			int stones = command.intArg(0);
+			if(isMine(command)) {
+				gameState.getSettings().stonesPerTurn = stones;
+				send(gameState);
+			}
+			serverMessage("Server: Stones per turn set to " + stones);
+			return null;
+		});
+		registry.register("towin", command -> {
+			int toWin = command.intArg(0);
+			if(isMine(command)) {
+				gameState.getSettings().stonesToWin = toWin;
+				send(gameState);
+			}
+			serverMessage("Server: Stones to win set to " + toWin);
+			return null;
+		});
+
+		/*
+		 * Show the latency of each stage of the message path
+		 */
+		registry.register("trace", command -> {
+			if(isMine(command))
+				serverMessage(Trace.ENABLED ? "Server: Here's where the time went\n" + Trace.dump() : "Server: Tracing is off.");
+			return null;
+		});
+
+		/*
+		 * Suggest a move from the opening book
+		 */
+		registry.register("hint", command -> {
+			if(isMine(command)) {
+				int cell = book == null ? -1 : book.bestMove(gameState.snapshot());
+				if(cell < 0)
+					serverMessage("Server: You're on your own, mister.");
+				else
+					serverMessage("Server: Try " + Symmetry.cellX(cell) + " " + Symmetry.cellY(cell));
+			}
+			return null;
+		});
+
+		return registry;
+	}
+
+	private static boolean isMine(Command command) {
+		return command.sender() == getId();
+	}
+
+	private static void serverMessage(String serverMessage) {
+		dispatcher.append("\n" + serverMessage + "\n\n");
+	}
+
+	private static void introduce(String builder) {
+		name = builder;
+		int rand = (new Random()).nextInt(9);
+		if(rand == 0) {
+			dispatcher.append("\nServer: Our next gentleman needs no introduction because you dont know who he\nis anyway-\n");
+			dispatcher.appendLater("Server: Please welcome!\n\n", 2000);
+		}
+		else if(rand == 1)
+			serverMessage("Server: Please welcome to the stage, Mr. " + builder);
+		else if(rand == 2) {
+			dispatcher.append("\nServer: Our next gentleman is a legend-\n");
+			dispatcher.appendLater("Server: in his own mind, Mr. " + builder + "\n\n", 2000);
+		}
+		else if(rand == 3) {
+			dispatcher.append("\nServer: This next gentleman has just finished his first movie.\n");
+			dispatcher.appendLater("Server: Right after the game hes going on netflix to watch another.\n\n", 2000);
+		}
+		else if(rand == 4) {
+			dispatcher.append("\nServer: Please welcome to the stage... (wait for applause)\n");
+			dispatcher.appendLater("Server: Wait for it...\n", 2000);
+			dispatcher.appendLater("Server: Wait...\n", 4000);
+			dispatcher.appendLater("Server: Well, I'll see you out Mr. " + builder + "\n\n", 6000);
+		}
+		else if(rand == 5 || rand == 6) {
+			dispatcher.append("\nServer: Our next gentleman is autistic-\n");
+			dispatcher.appendLater("Server: for real though. Welcome, Mr. Autistic!\n\n", 2000);
+			name = "Mr. Autistic";
+		}
+		else if(rand == 7) {
+			dispatcher.append("\nServer: I don't care man\n");
+			dispatcher.appendLater("Server: I don't care\n\n", 2000);
+		}
+		else if(rand == 8) {
+			dispatcher.append("\nServer: Id like to introduce myself.\n");
+			dispatcher.appendLater("Server: Id really like to, but unfortunately I have to introduce Mr. " + builder + "\n", 2000);
+			dispatcher.appendLater("Server: \t\t\t\t\t\t\tcunt\n", 4000);
+		}
+	}
+
+	/*
+	 * Returns null if the line is chat
+	 */
+	static Command parseCommand(String line) {
+		int id = getId();
+		return commands.parse(line, id, hasNametag() ? name : Integer.toString(id));
+	}
+
 	@SuppressWarnings("unchecked")
-	private static int connect() {
-		Client client = new Client("100.6.20.129", 19203, true);
+	private static void connect() {
+		client = new Client("100.6.20.129", 19203, true);
 
 		while(!client.isConnected()) {
 			try {
@@ -94,191 +310,40 @@ public class MainFrame extends JFrame {
 		}
 
 		in = new JayList<>();
-		out = new JayList<>();
-		client.tether(out, in);
+		client.tether(in);
 
 		new Thread(() -> {
 			while(true) {
 				try {
 					while(!in.isEmpty()) {
-						if(in.getFirst() instanceof GameState) {
-							gameState = (GameState) in.removeFirst();
-							displayPanel.update(gameState);
-						} else if (in.getFirst() instanceof String) {
-							String potentialCommand = (String) in.removeFirst();
-							TextPanel.append(potentialCommand + "\n");
-							String serverMessage = "";
-
-							/*
-							 * View help
-							 */
-							if(potentialCommand.contains("help")) {
-								serverMessage = "Server: Welcome!\n"
-										+ "Possible commands are listed below:\n"
-										+ "reset > resets the game board\n"
-										+ "delete > deletes a grid; (bottom left: 0 0, one higher: 1 0)\n"
-										+ "name (desired name) > sets your name; e.g. name Steve\n"
-										+ "set (white/black) > sets your color in game; e.g. set black\n"
-										+ "stones (number of stones per turn) > sets the game setting; e.g. stones 2\n"
-										+ "towin (number of stones aligned to win) > sets the game setting; e.g. towin 7"
-										+ "";
-							}
-
-							/*
-							 * Resets a grid block to default
-							 */
-							else if(potentialCommand.contains("delete")) {
-								int readFrom = potentialCommand.indexOf("delete");
-								String builder = "";
-								int x = 0;
-								int y = 0;
-								for(int j = readFrom + 7; j < potentialCommand.length(); j++) {
-									if(potentialCommand.charAt(j) == ' ') {
-										x = Integer.parseInt(builder);
-										builder = "";
-									} else {
-										builder += potentialCommand.charAt(j);
-									}
-								}
-								y = Integer.parseInt(builder);
-								delete(x, y);
-								send(gameState);
-							}
-
-							/*
-							 * Reset the game
-							 */
-							else if(potentialCommand.contains("reset")) {
-								reset();
-								send(gameState);
-							}
-
-							/*
-							 * Set nametag
-							 */
-							else if(potentialCommand.contains("name") && (potentialCommand.contains(Integer.toString(id)) || potentialCommand.contains(name))) {
-								int readFrom = potentialCommand.indexOf("name");
-								String builder = "";
-								for(int j = readFrom + 5; j < potentialCommand.length(); j++) {
-									builder += potentialCommand.charAt(j);
-								}
-								name = builder;
-								int rand = (new Random()).nextInt(9);
-								if(rand == 0) {
-									TextPanel.append("\nServer: Our next gentleman needs no introduction because you dont know who he\nis anyway-\n");
-									try {
-										Thread.sleep(2000);
-										TextPanel.append("Server: Please welcome!\n\n");
-									} catch (Exception e) {}
-
-								}
-								else if(rand == 1)
-									serverMessage = "Server: Please welcome to the stage, Mr. " + builder;
-								else if(rand == 2) {
-									TextPanel.append("\nServer: Our next gentleman is a legend-\n");
-									try {
-										Thread.sleep(2000);
-										TextPanel.append("Server: in his own mind, Mr. " + builder + "\n\n");
-									} catch (Exception e) {}
-								}
-								else if(rand == 3) {
-									TextPanel.append("\nServer: This next gentleman has just finished his first movie.\n");
-									try {
-										Thread.sleep(2000);
-										TextPanel.append("Server: Right after the game hes going on netflix to watch another.\n\n");
-									} catch (Exception e) {}
-								}
-								else if(rand == 4) {
-									TextPanel.append("\nServer: Please welcome to the stage... (wait for applause)\n");
-									try {
-										Thread.sleep(2000);
-										TextPanel.append("Server: Wait for it...\n");
-										Thread.sleep(2000);
-										TextPanel.append("Server: Wait...\n");
-										Thread.sleep(2000);
-										TextPanel.append("Server: Well, I'll see you out Mr. " + builder + "\n\n");
-									} catch (Exception e) {}
-								}
-								else if(rand == 5 || rand == 6) {
-									TextPanel.append("\nServer: Our next gentleman is autistic-\n");
-									try {
-										Thread.sleep(2000);
-										TextPanel.append("Server: for real though. Welcome, Mr. Autistic!\n\n");
-										name = "Mr. Autistic";
-									} catch (Exception e) {}
-								}
-								else if(rand == 7) {
-									TextPanel.append("\nServer: I don't care man\n");
-									try {
-										Thread.sleep(2000);
-										TextPanel.append("Server: I don't care\n\n");
-									} catch (Exception e) {}
-								}
-								else if(rand == 8) {
-									TextPanel.append("\nServer: Id like to introduce myself.\n");
-									try {
-										Thread.sleep(2000);
-										TextPanel.append("Server: Id really like to, but unfortunately I have to introduce Mr. " + builder + "\n");
-										Thread.sleep(2000);
-										TextPanel.append("Server: \t\t\t\t\t\t\tcunt\n");
-									} catch (Exception e) {}
-								}
+						if(in.getFirst() instanceof Traced) {
+							// Only queued while tracing; a traced state is stamped again once it is drawn
+							Traced traced = (Traced) in.removeFirst();
+							if(traced.message() instanceof GameState) {
+								gameState = (GameState) traced.message();
+								record(gameState);
+								dispatcher.render(gameState, traced);
+							} else {
+								in.addFirst(traced.message());
 							}
-
-							/*
-							 * Set color
-							 */
-							else if(potentialCommand.contains("set")) {
-								if(potentialCommand.contains("white")) {
-									if(potentialCommand.contains(Integer.toString(id)))
-										playingWhite = true;
-									else if(name != null) {
-										if(potentialCommand.contains(name))
-											playingWhite = true;
-									}
-									serverMessage = "Server: Okay, mister.";
-								} else {
-									if(potentialCommand.contains(Integer.toString(id)))
-										playingWhite = false;
-									else if(name != null) {
-										if(potentialCommand.contains(name))
-											playingWhite = false;
-									}
-									serverMessage = "Server: No.";
-								}
-							}
-
-							/*
-							 * Game settings
-							 */
-							else if(potentialCommand.contains("stones")) {
-								int readFrom = potentialCommand.indexOf("stones");
-								String builder = "";
-								for(int j = readFrom + 7; j < potentialCommand.length(); j++) {
-									builder += potentialCommand.charAt(j);
-								}
-
-								try {
-									gameState.getSettings().stonesPerTurn = Integer.parseInt(builder);
-									serverMessage = "Server: Stones per turn set to " + Integer.parseInt(builder);
-								} catch (Exception e) {}
-							}
-							else if(potentialCommand.contains("towin")) {
-								int readFrom = potentialCommand.indexOf("towin");
-								String builder = "";
-								for(int j = readFrom + 6; j < potentialCommand.length(); j++) {
-									builder += potentialCommand.charAt(j);
-								}
-
-								try {
-									gameState.getSettings().stonesToWin = Integer.parseInt(builder);
-									serverMessage = "Server: Stones to win set to " + Integer.parseInt(builder);
-								} catch (Exception e) {}
+						} else if(in.getFirst() instanceof GameState) {
+							gameState = (GameState) in.removeFirst();
+							record(gameState);
+							dispatcher.render(gameState);
+						} else if (in.getFirst() instanceof Command) {
+							Command command = (Command) in.removeFirst();
+							dispatcher.append(command.senderTag() + ": " + command + "\n");
+							try {
+								commands.dispatch(command);
+							} catch (IllegalArgumentException iae) {
+								// Malformed or unknown command; ignore
 							}
-
-							if(serverMessage.length() > 0)
-								TextPanel.append("\n" + serverMessage + "\n\n");
-							displayPanel.update(gameState);
+							dispatcher.render(gameState);
+						} else if (in.getFirst() instanceof String) {
+							// Chat is only ever displayed
+							dispatcher.append((String) in.removeFirst() + "\n");
+						} else {
+							in.removeFirst();
 						}
 					}
 					try {
@@ -289,12 +354,26 @@ public class MainFrame extends JFrame {
 				} catch (NullPointerException npe) {}
 			}
 		}).start();
-
-		return client.id();
 	}
 
-	@SuppressWarnings("unchecked")
+	/*
+	 * A state waiting to be sent is replaced by a newer one; anything else is dropped while the connection is backed up
+	 */
 	static void send(Object obj) {
-		out.addLast(obj);
+		if(obj instanceof GameState)
+			record((GameState) obj);
+		if(!client.offer(Trace.ENABLED ? Trace.start(obj) : obj))
+			dispatcher.append("Not sent, the connection is backed up or closed\n");
+	}
+
+	private static void record(GameState gameState) {
+		if(recorder == null)
+			return;
+		try {
+			recorder.record(gameState);
+		} catch (IOException ioe) {
+			// TODO: Handle
+			System.out.println("Could not record game: " + ioe.getMessage());
+		}
 	}
 }
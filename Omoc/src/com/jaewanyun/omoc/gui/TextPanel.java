@@ -2,24 +2,29 @@ package com.jaewanyun.omoc.gui;
 
 import java.awt.BorderLayout;
 import java.awt.Color;
+import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.Font;
-import java.awt.Insets;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 
+import javax.swing.AbstractListModel;
 import javax.swing.BorderFactory;
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.JList;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
-import javax.swing.JTextArea;
 import javax.swing.JTextField;
 import javax.swing.ScrollPaneConstants;
-import javax.swing.text.DefaultCaret;
+
+import com.jaewanyun.omoc.net.Command;
 
 public class TextPanel extends JPanel {
 
 	private static final long serialVersionUID = 1L;
-	private static JTextArea chatArea;
+	private static final int MAX_LINES = 2000; // Older lines are dropped
+	private static ChatModel chatModel;
+	private static JList<String> chatArea;
 	private static JTextField inputArea;
 
 	public TextPanel() {
@@ -27,12 +32,14 @@ public class TextPanel extends JPanel {
 		setPreferredSize(new Dimension(500, 100));
 
 		// Chat viewing area
-		chatArea = new JTextArea();
-		chatArea.setEditable(false);
-		chatArea.setWrapStyleWord(true);
+		// A list with fixed cell sizes only lays out and paints the rows in the viewport
+		chatModel = new ChatModel(MAX_LINES);
+		chatArea = new JList<>(chatModel);
 		chatArea.setFont(new Font("Lucida Sans Typewriter", Font.BOLD, 10));
-		DefaultCaret caret = (DefaultCaret) chatArea.getCaret();
-		caret.setUpdatePolicy(DefaultCaret.ALWAYS_UPDATE);
+		chatArea.setFixedCellHeight(chatArea.getFontMetrics(chatArea.getFont()).getHeight());
+		chatArea.setFixedCellWidth(1000);
+		chatArea.setFocusable(false);
+		chatArea.setCellRenderer(new ChatRenderer());
 		// Add to scroll pane so that the text area is scrollable
 		JScrollPane scrollPane = new JScrollPane(chatArea,
 				ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED,
@@ -43,7 +50,11 @@ public class TextPanel extends JPanel {
 		inputArea.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent e) {
-				if(MainFrame.hasNametag()) {
+				// Lines starting with a command are sent as a Command; everything else is chat
+				Command command = MainFrame.parseCommand(inputArea.getText());
+				if(command != null) {
+					MainFrame.send(command);
+				} else if(MainFrame.hasNametag()) {
 					MainFrame.send(MainFrame.getNametag() + ": " + inputArea.getText());
 				} else {
 					MainFrame.send(MainFrame.getId() + ": " + inputArea.getText());
@@ -56,13 +67,97 @@ public class TextPanel extends JPanel {
 		add(inputArea, BorderLayout.SOUTH);
 
 		// UI
-		chatArea.setBorder(BorderFactory.createEmptyBorder());
-		chatArea.setMargin(new Insets(5, 5, 5, 5));
+		chatArea.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
 		chatArea.setBackground(new Color(60, 80, 90));
 		chatArea.setForeground(new Color(219, 240, 254));
 	}
 
+	/*
+	 * Must be called on the EDT; text arriving within a frame should be passed in one call
+	 */
 	static void append(String append) {
-		chatArea.append(append);
+		chatModel.append(append);
+		chatArea.ensureIndexIsVisible(chatModel.getSize() - 1);
+	}
+
+	/*
+	 * Keeps the last lines of chat in a ring buffer
+	 * Text after the last newline is shown as a line that later appends continue
+	 */
+	static class ChatModel extends AbstractListModel<String> {
+
+		private static final long serialVersionUID = 1L;
+		private final String[] lines;
+		private int head; // Index of the oldest line
+		private int count;
+		private final StringBuilder partial = new StringBuilder();
+
+		ChatModel(int capacity) {
+			lines = new String[capacity];
+		}
+
+		void append(String text) {
+			int before = getSize();
+			int dropped = 0;
+			int start = 0;
+			int end;
+			while((end = text.indexOf('\n', start)) >= 0) {
+				partial.append(text, start, end);
+				if(push(partial.toString()))
+					dropped++;
+				partial.setLength(0);
+				start = end + 1;
+			}
+			partial.append(text, start, text.length());
+
+			// Fire once for the whole batch
+			int after = getSize();
+			if(dropped > 0) { // Every row shifted
+				fireContentsChanged(this, 0, after - 1);
+				return;
+			}
+			if(before > 0)
+				fireContentsChanged(this, before - 1, before - 1); // The partial line may have grown
+			if(after > before)
+				fireIntervalAdded(this, before, after - 1);
+		}
+
+		/*
+		 * Returns true if the oldest line had to be dropped
+		 */
+		private boolean push(String line) {
+			if(count < lines.length) {
+				lines[(head + count++) % lines.length] = line;
+				return false;
+			}
+			lines[head] = line;
+			head = (head + 1) % lines.length;
+			return true;
+		}
+
+		@Override
+		public int getSize() {
+			return count + (partial.length() > 0 ? 1 : 0);
+		}
+
+		@Override
+		public String getElementAt(int index) {
+			if(index == count)
+				return partial.toString();
+			return lines[(head + index) % lines.length];
+		}
+	}
+
+	/*
+	 * Draws lines as plain text, never as selected
+	 */
+	static class ChatRenderer extends DefaultListCellRenderer {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+			return super.getListCellRendererComponent(list, value, index, false, false);
+		}
 	}
 }
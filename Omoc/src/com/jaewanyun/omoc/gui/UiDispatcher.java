@@ -0,0 +1,107 @@
+package com.jaewanyun.omoc.gui;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.swing.SwingUtilities;
+
+import com.jaewanyun.omoc.GameState;
+import com.jaewanyun.omoc.net.Trace;
+import com.jaewanyun.omoc.net.Traced;
+
+/*
+ * Moves UI work from other threads onto the EDT
+ * Only the latest game state is rendered per frame and chat lines are appended in one batch per frame
+ * Any thread may call render and append; they never block
+ */
+final class UiDispatcher {
+
+	private static final long FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(16);
+	private final DisplayPanel displayPanel;
+	private final AtomicReference<GameState> pendingState = new AtomicReference<>();
+	private final ConcurrentLinkedQueue<String> pendingLines = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+	private final ScheduledExecutorService timer;
+	private volatile long lastFlush;
+	private volatile Traced pendingTrace; // Envelope of the pending state while tracing
+
+	UiDispatcher(DisplayPanel displayPanel) {
+		this.displayPanel = displayPanel;
+		timer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "ui-dispatcher");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/*
+	 * Replaces any state not yet rendered
+	 */
+	void render(GameState gameState) {
+		render(gameState, null);
+	}
+
+	/*
+	 * The envelope is stamped once the state it carried is drawn
+	 */
+	void render(GameState gameState, Traced traced) {
+		pendingTrace = traced;
+		pendingState.set(gameState);
+		schedule();
+	}
+
+	void append(String text) {
+		pendingLines.add(text);
+		schedule();
+	}
+
+	/*
+	 * Appends text after a delay without holding up the calling thread
+	 */
+	void appendLater(String text, long delayMillis) {
+		timer.schedule(() -> append(text), delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/*
+	 * Requests a flush on the next frame boundary unless one is already pending
+	 */
+	private void schedule() {
+		if(!scheduled.compareAndSet(false, true))
+			return;
+
+		long wait = lastFlush + FRAME_NANOS - System.nanoTime();
+		if(wait <= 0)
+			SwingUtilities.invokeLater(this::flush);
+		else
+			timer.schedule(() -> SwingUtilities.invokeLater(this::flush), wait, TimeUnit.NANOSECONDS);
+	}
+
+	/*
+	 * Runs on the EDT
+	 */
+	private void flush() {
+		lastFlush = System.nanoTime();
+		// Clear first so that anything arriving during the flush schedules another
+		scheduled.set(false);
+
+		String text = pendingLines.poll();
+		if(text != null) {
+			StringBuilder batch = new StringBuilder(text);
+			while((text = pendingLines.poll()) != null)
+				batch.append(text);
+			TextPanel.append(batch.toString());
+		}
+
+		GameState gameState = pendingState.getAndSet(null);
+		if(gameState != null) {
+			displayPanel.update(gameState);
+			Traced traced = pendingTrace;
+			if(Trace.ENABLED && traced != null && traced.message() == gameState)
+				Trace.record(traced, Trace.RENDERED);
+		}
+	}
+}
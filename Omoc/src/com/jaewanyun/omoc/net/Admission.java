@@ -0,0 +1,81 @@
+package com.jaewanyun.omoc.net;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Jaewan Yun <jay50@pitt.edu>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+/**
+ * Limits on the connections a server takes on, so that a surge of connections does not slow down the ones already open
+ * Connections beyond the accept rate wait in the backlog of the listening socket; connections beyond the maximum are
+ * told to come back later and closed
+ *
+ * @author Jaewan Yun <jay50@pitt.edu>
+ */
+public final class Admission {
+
+	/**
+	 * A thousand connections, taken on at fifty a second in bursts of up to a hundred
+	 */
+	public static final Admission DEFAULT = new Admission(1000, 50, 100, 256);
+	private final int maxConnections;
+	private final double acceptsPerSecond;
+	private final int burst;
+	private final int backlog;
+
+	/**
+	 * @param maxConnections Most connections open at once
+	 * @param acceptsPerSecond Connections accepted per second once a burst is used up
+	 * @param burst Connections that may be accepted at once after a quiet spell
+	 * @param backlog Connections the listening socket holds while they wait to be accepted; only read when the server is created
+	 */
+	public Admission(int maxConnections, double acceptsPerSecond, int burst, int backlog) {
+		if(maxConnections <= 0 || !(acceptsPerSecond > 0) || burst <= 0 || backlog <= 0)
+			throw new IllegalArgumentException();
+
+		this.maxConnections = maxConnections;
+		this.acceptsPerSecond = acceptsPerSecond;
+		this.burst = burst;
+		this.backlog = backlog;
+	}
+
+	public int maxConnections() {
+		return maxConnections;
+	}
+
+	public double acceptsPerSecond() {
+		return acceptsPerSecond;
+	}
+
+	public int burst() {
+		return burst;
+	}
+
+	public int backlog() {
+		return backlog;
+	}
+
+	@Override
+	public String toString() {
+		return "max " + maxConnections + ", " + acceptsPerSecond + "/s, burst " + burst + ", backlog " + backlog;
+	}
+}
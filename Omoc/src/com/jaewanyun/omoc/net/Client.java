@@ -2,8 +2,14 @@ package com.jaewanyun.omoc.net;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
-import java.net.Socket;
-import java.net.UnknownHostException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /*
  * The MIT License
@@ -36,14 +42,48 @@ import java.net.UnknownHostException;
  */
 public class Client implements Runnable {
 
-	private Socket socket;
-	private String serverName;
-	private int port;
-	private int id;
+	private volatile Transport.Link socket;
+	private final Transport transport;
+	private volatile int id;
+	private volatile long token; // Resumes the session after a lost connection; 0 until the server has given one
 	private Thread connectionListener;
 	private boolean usingCompression;
-	private ObjectOutputStream outputStream;
-	private ObjectInputStream inputStream;
+	private volatile ObjectOutputStream outputStream;
+	private volatile ObjectInputStream inputStream;
+	private final Object writeLock = new Object(); // Writes from different threads must not interleave
+	private final Object connectionLock = new Object(); // Guards the state below and is notified when it changes
+	private boolean connected;
+	private boolean closing; // Closed for good
+	private boolean spectating; // Asked again if the session cannot be resumed
+	private volatile long lastSequence = -1; // Last frame received; written only by the reading thread
+	private volatile long stateSequence = -1; // Last snapshot frame received
+	private long snapshotRequested; // System.nanoTime() of the last snapshot request
+	private static final long SNAPSHOT_RETRY_NANOS = 1000000000L;
+	private static final int OUTBOX_CAPACITY = 256;
+	private final SendQueue outbox; // Messages offered but not yet written
+	private Thread sender;
+	private Thread reader; // The only thread that reads from the server
+	private volatile Consumer<Object> sink; // Receives every message the reader does not handle itself
+	private volatile Runnable closed; // Run by the reader once the connection is lost
+	private final ConcurrentHashMap<Long, CompletableFuture<Object>> pending; // Requests waiting for their response
+	private final AtomicLong nextRequest = new AtomicLong();
+	private static final long IDS_TIMEOUT_MILLIS = 5000;
+	private static final long RECONNECT_MIN_MILLIS = 100;
+	private static final long RECONNECT_MAX_MILLIS = 10000;
+	private static final int HANDSHAKE_TIMEOUT_MILLIS = 10000;
+	private long retryAfterMillis; // Asked for by a server that turned the last attempt away; used only by the connecting thread
+	// Metrics of every client in the process, kept while any client is open
+	private static final String METRICS = "client.";
+	private static int openClients; // Guarded by Client.class
+	private final Counter bytesIn;
+	private final Counter bytesOut;
+	private final Counter messagesIn;
+	private final Counter messagesOut;
+	private final Histogram flushNanos;
+	private final Counter coalesced;
+	private final Counter rejected;
+	private final Counter reconnects;
+	private final Counter resumes;
 
 	/*
 	 * Prevent default constructor call
@@ -63,32 +103,66 @@ public class Client implements Runnable {
 	 * @param usingCompression Request to compress data. Both server and client need the same value
 	 */
 	public Client(String serverName, int port, boolean usingCompression) {
-		this.serverName = serverName;
-		this.port = port;
+		this(new TcpTransport(serverName, port), usingCompression);
+	}
+
+	/**
+	 * A client connecting over any transport, e.g. a Unix domain socket to a server on the same host
+	 *
+	 * @param transport The address of the server
+	 * @param usingCompression Request to compress data. Both server and client need the same value
+	 */
+	public Client(Transport transport, boolean usingCompression) {
+		this.transport = transport;
 		this.usingCompression = usingCompression;
 		this.id = -1;
+		synchronized(Client.class) {
+			openClients++;
+			Metrics metrics = Metrics.shared();
+			bytesIn = metrics.counter(METRICS + "bytes.in");
+			bytesOut = metrics.counter(METRICS + "bytes.out");
+			messagesIn = metrics.counter(METRICS + "messages.in");
+			messagesOut = metrics.counter(METRICS + "messages.out");
+			flushNanos = metrics.histogram(METRICS + "flush.nanos");
+			coalesced = metrics.counter(METRICS + "outbox.coalesced");
+			rejected = metrics.counter(METRICS + "outbox.rejected");
+			reconnects = metrics.counter(METRICS + "reconnects");
+			resumes = metrics.counter(METRICS + "resumes");
+		}
+		this.outbox = new SendQueue(OUTBOX_CAPACITY, coalesced, rejected);
+		this.pending = new ConcurrentHashMap<>();
 
 		start();
 	}
 
 	/**
-	 * Check if the client is still connected to the server
+	 * Check if the client is connected to the server at the moment
+	 * A client that lost its connection reconnects on its own until it is closed
 	 *
-	 * @return True if at least one stream is open
+	 * @return True if the connection is open and the server has given an id
 	 */
 	public boolean isConnected() {
-		if((outputStream != null || inputStream != null) && id != -1) {
-			return true;
+		synchronized(connectionLock) {
+			return connected && id != -1;
 		}
-		return false;
 	}
 
 	/**
-	 * Close a connection
-	 *
-	 * @param id Identification number of a connection to close
+	 * Close the connection for good
 	 */
 	public void close() {
+		synchronized(connectionLock) {
+			if(closing)
+				return;
+			closing = true;
+			connected = false;
+			connectionLock.notifyAll();
+		}
+
+		// Forget what was never sent and fail the requests that will never be answered
+		outbox.close();
+		failPending("Connection closed");
+
 		// Close ObjectOutputStream
 		if(outputStream != null) {
 			try {
@@ -126,6 +200,62 @@ public class Client implements Runnable {
 		}
 
 		System.out.println("Closed connection: " + id);
+
+		// Dropped with the last client, as the metrics of a server are with the server
+		synchronized(Client.class) {
+			if(--openClients == 0)
+				Metrics.shared().removeAll(METRICS);
+		}
+
+		Runnable current = closed;
+		if(current != null)
+			current.run();
+	}
+
+	/*
+	 * Fails the requests waiting for a response that the connection will no longer carry
+	 */
+	private void failPending(String reason) {
+		for(Long requestId : pending.keySet()) {
+			CompletableFuture<Object> future = pending.remove(requestId);
+			if(future != null)
+				future.completeExceptionally(new IOException(reason));
+		}
+	}
+
+	/*
+	 * Marks the connection over a socket as lost so that the connecting thread reconnects
+	 * Whichever thread notices first does this; a socket already replaced is ignored
+	 */
+	private void broken(Transport.Link lost) {
+		synchronized(connectionLock) {
+			if(lost == null || lost != socket || !connected)
+				return;
+			connected = false;
+			connectionLock.notifyAll();
+		}
+		failPending("Connection lost");
+		try {
+			lost.close();
+		} catch (IOException ioe) {
+			// TODO: Handle
+			System.out.println("Error closing socket");
+		}
+
+		// TODO: Handle
+		System.out.println("Lost connection: " + id);
+	}
+
+	/*
+	 * Blocks until the client is connected
+	 * Returns the socket of the connection, or null once the client is closed
+	 */
+	private Transport.Link awaitConnection() throws InterruptedException {
+		synchronized(connectionLock) {
+			while(!connected && !closing)
+				connectionLock.wait();
+			return closing ? null : socket;
+		}
 	}
 
 	/**
@@ -138,34 +268,64 @@ public class Client implements Runnable {
 	}
 
 	/**
-	 * Retrieves all identifications that are connected to the server
+	 * Retrieves all identifications that are connected to the server, waiting a few seconds at most
 	 *
-	 * @return All identification numbers of connected clients
+	 * @return All identification numbers of connected clients, or null if the request failed
 	 */
-	@SuppressWarnings("unchecked")
 	public Integer[] serverIds() {
-		JayList<String> jayList = new JayList<>();
-		jayList.addLast("getid");
 		try {
-			outputStream.writeObject(jayList);
-			outputStream.flush();
-		} catch (IOException ioe) {
+			return requestIds().get(IDS_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		} catch (ExecutionException ee) {
 			// TODO: Handle
-			System.out.println("Could not write request");
+			System.out.println("Could not read request: " + ee.getCause());
+		} catch (TimeoutException te) {
+			// TODO: Handle
+			System.out.println("No reply to request: getid");
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
 		}
-		try {
-			Object temp = inputStream.readObject();
-			JayList<Integer> list = (JayList<Integer>) temp;
+		return null;
+	}
+
+	/**
+	 * Retrieves all identifications that are connected to the server without blocking
+	 *
+	 * @return Completed with all identification numbers of connected clients
+	 */
+	@SuppressWarnings("unchecked")
+	public CompletableFuture<Integer[]> requestIds() {
+		return request("getid").thenApply(reply -> {
+			JayList<Integer> list = (JayList<Integer>) reply;
 			return list.toArray(new Integer[list.size()]);
+		});
+	}
 
-		} catch (IOException ioe) {
-			// TODO: Handle
-			System.out.println("Could not read request 1");
-		} catch (ClassNotFoundException cnfe) {
-			// TODO: Handle
-			System.out.println("Could not read request 2");
+	/**
+	 * Sends a request to the server without waiting for the reply
+	 * Any number of requests may be outstanding; each is completed when its own response arrives
+	 *
+	 * @param name Name the request is registered under on the server
+	 * @param args Arguments of the request
+	 * @return Completed with the reply of the server, which may be null, or exceptionally if the request failed,
+	 * the outbox was full or the connection was lost
+	 */
+	public CompletableFuture<Object> request(String name, String... args) {
+		CompletableFuture<Object> future = new CompletableFuture<>();
+		long requestId = nextRequest.incrementAndGet();
+		pending.put(requestId, future);
+		startReader();
+		if(!offer(new Request(requestId, new Command(name, args, id, null)))) {
+			pending.remove(requestId);
+			future.completeExceptionally(new IllegalStateException("Outbox is full or closed"));
 		}
-		return null;
+		return future;
+	}
+
+	/**
+	 * @return Number of requests waiting for their response
+	 */
+	public int pendingRequests() {
+		return pending.size();
 	}
 
 	/**
@@ -174,16 +334,13 @@ public class Client implements Runnable {
 	 * @param idsToQuit The identification numbers to quit
 	 */
 	public void serverKick(int[] idsToQuit) {
-		JayList<String> jayList = new JayList<>();
-		jayList.addLast("kick");
-
+		String[] args = new String[idsToQuit.length];
 		for(int j = 0; j < idsToQuit.length; j++) {
-			jayList.addLast(Integer.toString(idsToQuit[j]));
+			args[j] = Integer.toString(idsToQuit[j]);
 		}
 
 		try {
-			outputStream.writeObject(jayList);
-			outputStream.flush();
+			write(new Command("kick", args, id, null));
 		} catch (IOException ioe) {
 			// TODO: Handle
 			System.out.println("Could not write request: kick");
@@ -192,20 +349,16 @@ public class Client implements Runnable {
 
 	/**
 	 * All commands without a parameter or a return type are send through this method
-	 * Supported commands: pause
+	 * Supported commands: pause, spectate
 	 *
 	 * @param command The command to send to the server
 	 */
 	public void serverCommand(String command) {
-		JayList<String> jayList = new JayList<>();
-
-		if(!(command.equals("pause")))
+		if(!(command.equals("pause") || command.equals("spectate")))
 			throw new IllegalArgumentException();
 
-		jayList.addLast(command);
 		try {
-			outputStream.writeObject(jayList);
-			outputStream.flush();
+			write(new Command(command, null, id, null));
 			System.out.println(command);
 		} catch (IOException ioe) {
 			// TODO: Handle
@@ -213,106 +366,360 @@ public class Client implements Runnable {
 		}
 	}
 
+	/**
+	 * Sends everything added to an out queue and adds everything received to an in queue
+	 * The out queue is emptied into the bounded outbox as room frees up, so it still grows while the server stalls;
+	 * use tether(inQueue) with offer to be told instead
+	 *
+	 * @param outQueue Messages to send
+	 * @param inQueue Receives the messages from the server
+	 */
 	public void tether(JayList<Object> outQueue, JayList<Object> inQueue) {
 		new Thread(() -> {
 			try {
 				while(true) {
 					while(!outQueue.isEmpty()) {
-						outputStream.writeObject(outQueue.removeFirst());
-						outputStream.flush();
-						outputStream.reset();
+						if(!outbox.put(outQueue.removeFirst()))
+							return;
 					}
 					Thread.sleep(10);
 				}
-			} catch (IOException ioe) {
-				// TODO: Handle
-				System.out.println("Writing output from tether failed");
 			} catch (InterruptedException ie) {
 				// Do nothing
-			} finally {
-				close();
 			}
 		}).start();
 
-		new Thread(() -> {
+		tether(inQueue);
+	}
+
+	/**
+	 * Adds everything received to an in queue; messages are sent with offer
+	 *
+	 * @param inQueue Receives the messages from the server
+	 */
+	public void tether(JayList<Object> inQueue) {
+		sink = message -> {
+			if(message instanceof Frame) { // Spectators receive messages as shared frames
+				if(!accept((Frame) message))
+					return;
+				message = decode((Frame) message);
+				if(message == null)
+					return;
+			}
+			if(message instanceof Traced) { // Handed on in its envelope only while tracing
+				if(Trace.ENABLED)
+					Trace.arrive((Traced) message, Trace.RECEIVED);
+				else
+					message = ((Traced) message).message();
+			}
+			inQueue.addLast(message);
+		};
+		startSender();
+		startReader();
+	}
+
+	/**
+	 * Becomes a spectator and hands every frame from the server to a sink without decoding it, e.g. to relay it further
+	 * Frames arrive in order; missed frames are recovered by requesting a snapshot
+	 *
+	 * @param frames Receives the frames on the reading thread
+	 * @param closed Run once the client is closed; a lost connection is resumed instead
+	 */
+	public void follow(Consumer<Frame> frames, Runnable closed) {
+		this.sink = message -> {
+			if(message instanceof Frame && accept((Frame) message))
+				frames.accept((Frame) message);
+		};
+		this.closed = closed;
+		synchronized(connectionLock) {
+			spectating = true;
+			if(connected) // Else asked once the session is opened
+				offer(new Command("spectate", null, id, null));
+		}
+		startSender();
+		startReader();
+	}
+
+	/*
+	 * Reads every message from the server on a thread of its own once the connection is made
+	 * Heartbeats and responses are handled here; everything else goes to the sink, which is swapped without restarting the reader
+	 */
+	private synchronized void startReader() {
+		if(reader != null)
+			return;
+		reader = new Thread(() -> {
 			try {
-				while(true) {
-					inQueue.addLast(inputStream.readObject());
-					Thread.sleep(10);
+				Transport.Link current;
+				while((current = awaitConnection()) != null) {
+					ObjectInputStream in = inputStream;
+					try {
+						while(true) {
+							Object message = in.readObject();
+							messagesIn.increment();
+							if(message instanceof Heartbeat) {
+								write(Heartbeat.INSTANCE);
+							} else if(message instanceof Response) {
+								respond((Response) message);
+							} else {
+								Consumer<Object> currentSink = sink;
+								if(currentSink != null)
+									currentSink.accept(message);
+							}
+						}
+					} catch (IOException ioe) {
+						// TODO: Handle
+						System.out.println("Reading input from the server failed");
+					} catch (ClassNotFoundException cnfe) {
+						// TODO: Handle
+						System.out.println("Reading input failed");
+					}
+					broken(current);
 				}
-			} catch (IOException ioe) {
-				// TODO: Handle
-				System.out.println("Reading input to tether failed");
-			} catch (ClassNotFoundException cnfe) {
-				// TODO: Handle
-				System.out.println("Reading input failed");
 			} catch (InterruptedException ie) {
 				// Do nothing
-			} finally {
-				close();
 			}
-		}).start();
+		}, "reader-" + transport);
+		reader.start();
 	}
 
-	@Override
-	public void run() {
-		// Create socket
-		makeSocket();
+	/*
+	 * Completes the request a response answers; a response to no known request is dropped
+	 */
+	private void respond(Response response) {
+		CompletableFuture<Object> future = pending.remove(response.id());
+		if(future == null)
+			return;
+		if(response.error() == null)
+			future.complete(response.value());
+		else
+			future.completeExceptionally(new IllegalStateException(response.error()));
+	}
+
+	/**
+	 * Queues a message to be written to the server without blocking
+	 * A state still waiting in the queue is replaced by a newer one, so a stalled connection holds at most one state
+	 *
+	 * @param message The message to send, possibly in a trace envelope
+	 * @return False if the queue is full or the connection is closed; the message is not sent
+	 */
+	public boolean offer(Object message) {
+		startSender();
+		return outbox.offer(message);
+	}
 
-		// Create output stream
-		outputStream = usingCompression ? StreamUtil.createOutputZipStream(socket) : StreamUtil.createOutputStream(socket);
+	/**
+	 * @return Number of messages offered but not yet written
+	 */
+	public int queueDepth() {
+		return outbox.size();
+	}
 
-		// Flush output
+	/**
+	 * @return Most messages that can wait to be written at once
+	 */
+	public int queueCapacity() {
+		return outbox.capacity();
+	}
+
+	/*
+	 * Writes the messages of the outbox in order on a thread of its own once the connection is made
+	 */
+	private synchronized void startSender() {
+		if(sender != null)
+			return;
+		sender = new Thread(() -> {
+			try {
+				Object message = null;
+				while(message != null || (message = outbox.take()) != null) {
+					if(awaitConnection() == null)
+						return;
+					try {
+						if(Trace.ENABLED && message instanceof Traced) {
+							Trace.stamp((Traced) message, Trace.DEQUEUE);
+							write(message);
+							Trace.record((Traced) message, Trace.WRITTEN);
+						} else {
+							write(message);
+						}
+						message = null;
+					} catch (IOException ioe) {
+						// TODO: Handle
+						System.out.println("Writing output from outbox failed; retrying once reconnected");
+					}
+				}
+			} catch (InterruptedException ie) {
+				// Do nothing
+			}
+		}, "sender-" + transport);
+		sender.start();
+	}
+
+	/**
+	 * Writes a message to the server
+	 * The message overtakes anything waiting in the outbox
+	 *
+	 * @param message The message to send
+	 * @return True if the message was written
+	 */
+	public boolean send(Object message) {
 		try {
-			outputStream.flush();
+			write(message);
+			return true;
 		} catch (IOException ioe) {
 			// TODO: Handle
-			System.out.println("Error with flushing: " + id);
+			System.out.println("Could not send to the server");
+			return false;
+		}
+	}
+
+	/*
+	 * Writes, flushes and forgets one message so that a later change to it is sent in full
+	 * A failed write marks the connection as lost
+	 */
+	private void write(Object message) throws IOException {
+		synchronized(writeLock) {
+			Transport.Link current = socket;
+			ObjectOutputStream out = outputStream;
+			if(out == null)
+				throw new IOException("Not connected");
+			try {
+				long start = System.nanoTime();
+				out.writeObject(message);
+				out.flush();
+				out.reset();
+				flushNanos.recordSince(start);
+			} catch (IOException ioe) {
+				broken(current);
+				throw ioe;
+			}
 		}
+		messagesOut.increment();
+	}
 
-		// Create input stream
-		inputStream = usingCompression ? StreamUtil.createInputZipStream(socket) : StreamUtil.createInputStream(socket);
+	/*
+	 * Drops frames already seen and asks for the latest snapshot when frames were missed
+	 * A snapshot older than one already received is dropped so that a late reply never rolls the state back
+	 */
+	private boolean accept(Frame frame) {
+		long sequence = frame.sequence();
+		if(frame.isSnapshot()) {
+			if(sequence <= stateSequence)
+				return false;
+			stateSequence = sequence;
+		} else if(sequence <= lastSequence) {
+			return false;
+		} else if(lastSequence >= 0 && sequence > lastSequence + 1 && System.nanoTime() - snapshotRequested > SNAPSHOT_RETRY_NANOS) {
+			snapshotRequested = System.nanoTime();
+			offer(new Command("snapshot", null, id, null));
+		}
+		lastSequence = Math.max(lastSequence, sequence);
+		return true;
+	}
 
-		// Read ID
+	/*
+	 * Returns null if the frame cannot be read; the next snapshot makes up for it
+	 */
+	private static Object decode(Frame frame) {
 		try {
-			Object readFirst = inputStream.readObject();
-			if(readFirst instanceof Integer)
-				id = (int) readFirst;
-			else
-				throw new ClassNotFoundException();
-		} catch (ClassNotFoundException cnfe) {
-			// TODO: Handle
-			System.out.println("Unable to read from: " + id);
-		} catch (IOException ioe) {
+			return frame.decode();
+		} catch (IOException | ClassNotFoundException e) {
 			// TODO: Handle
-			System.out.println("Error with client: " + id);
+			System.out.println("Reading a frame failed: " + frame.sequence());
+			return null;
 		}
 	}
 
 	/**
-	 * Creates a socket requesting for a connection to the specified port
+	 * Connects and reconnects whenever the connection is lost, until the client is closed
+	 * Failed attempts back off exponentially with jitter so that clients dropped together do not return together
 	 */
-	private void start() {
-		if(connectionListener == null) {
-			connectionListener = new Thread(this);
-			connectionListener.start();
+	@Override
+	public void run() {
+		long backoff = RECONNECT_MIN_MILLIS;
+		try {
+			while(true) {
+				synchronized(connectionLock) {
+					while(connected && !closing)
+						connectionLock.wait();
+					if(closing)
+						return;
+				}
+				try {
+					connect();
+					backoff = RECONNECT_MIN_MILLIS;
+				} catch (IOException | ClassNotFoundException e) {
+					// TODO: Handle
+					System.out.println("Could not connect to: " + transport + " - " + e.getMessage());
+					Thread.sleep(retryAfterMillis + backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1));
+					backoff = Math.min(backoff * 2, RECONNECT_MAX_MILLIS);
+					retryAfterMillis = 0;
+				}
+			}
+		} catch (InterruptedException ie) {
+			// Do nothing
 		}
 	}
 
 	/*
-	 * Creates a socket from name of server and the port provided
+	 * Opens a connection and says hello, naming the session to resume if there was one
+	 * A resumed session carries on after the last frame received; a new one starts over from the latest snapshot
 	 */
-	private void makeSocket() {
+	private void connect() throws IOException, ClassNotFoundException {
+		Transport.Link current = transport.connect();
 		try {
-			socket = new Socket(serverName, port);
-		} catch (UnknownHostException uhe) {
-			// TODO: Handle
-			System.out.println("Host unknown: " + uhe.getMessage());
-			System.exit(-1);
-		} catch (IOException ioe) {
-			// TODO: Handle
-			System.out.println("Could not listen on: " + serverName + " : " + port);
-			System.exit(-1);
+			current.setReadTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+			ObjectOutputStream out = StreamUtil.openOutputStream(current, usingCompression, bytesOut);
+			out.writeObject(new Hello(token, lastSequence));
+			out.flush();
+			ObjectInputStream in = StreamUtil.openInputStream(current, usingCompression, bytesIn);
+			Object first = in.readObject();
+			while(first instanceof Heartbeat)
+				first = in.readObject();
+			if(first instanceof Rejected) {
+				retryAfterMillis = ((Rejected) first).retryAfterMillis();
+				throw new IOException("Rejected: " + ((Rejected) first).reason());
+			}
+			if(!(first instanceof Session))
+				throw new IOException("Unexpected reply to hello");
+			current.setReadTimeout(0);
+
+			Session session = (Session) first;
+			synchronized(connectionLock) {
+				if(closing) {
+					current.close();
+					return;
+				}
+				if(token != 0)
+					reconnects.increment();
+				if(session.resumed()) {
+					resumes.increment();
+				} else {
+					lastSequence = -1;
+					stateSequence = -1;
+				}
+				socket = current;
+				outputStream = out;
+				inputStream = in;
+				id = session.id();
+				token = session.token();
+				connected = true;
+				if(spectating && !session.resumed())
+					offer(new Command("spectate", null, id, null));
+				connectionLock.notifyAll();
+			}
+		} catch (IOException | ClassNotFoundException e) {
+			current.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Creates a socket requesting for a connection to the specified port
+	 */
+	private void start() {
+		if(connectionListener == null) {
+			connectionListener = new Thread(this, "connect-" + transport);
+			connectionListener.start();
 		}
 	}
 }
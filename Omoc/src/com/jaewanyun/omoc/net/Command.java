@@ -0,0 +1,134 @@
+package com.jaewanyun.omoc.net;
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Jaewan Yun <jay50@pitt.edu>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+/**
+ * A command tokenized once by its sender and routed by name through a CommandRegistry
+ * Chat is sent as plain Strings, so chat text is never read as a command
+ *
+ * @author Jaewan Yun <jay50@pitt.edu>
+ */
+public final class Command implements Serializable {
+
+	private static final long serialVersionUID = 5529183702114893L;
+	private static final String[] NO_ARGS = new String[0];
+	private final String name;
+	private final String[] args;
+	private final int sender;
+	private final String senderTag;
+
+	/**
+	 * @param name Name the command is registered under
+	 * @param args Arguments following the name
+	 * @param sender Identification number of the sending connection
+	 * @param senderTag Name shown for the sender
+	 */
+	public Command(String name, String[] args, int sender, String senderTag) {
+		if(name == null)
+			throw new IllegalArgumentException();
+
+		this.name = name;
+		this.args = args == null ? NO_ARGS : args.clone();
+		this.sender = sender;
+		this.senderTag = senderTag;
+	}
+
+	/**
+	 * Splits a line on whitespace in a single pass
+	 *
+	 * @param line The line to split
+	 * @return The tokens of the line
+	 */
+	public static String[] tokenize(String line) {
+		ArrayList<String> tokens = new ArrayList<>();
+		int length = line.length();
+		int start = -1;
+		for(int j = 0; j <= length; j++) {
+			boolean space = j == length || Character.isWhitespace(line.charAt(j));
+			if(space && start >= 0) {
+				tokens.add(line.substring(start, j));
+				start = -1;
+			} else if(!space && start < 0) {
+				start = j;
+			}
+		}
+		return tokens.toArray(new String[tokens.size()]);
+	}
+
+	public String name() {
+		return name;
+	}
+
+	public int argCount() {
+		return args.length;
+	}
+
+	public String arg(int index) {
+		return args[index];
+	}
+
+	/**
+	 * @param from First argument to join
+	 * @return The arguments from the given index joined by single spaces
+	 */
+	public String argsFrom(int from) {
+		StringBuilder builder = new StringBuilder();
+		for(int j = from; j < args.length; j++) {
+			if(j > from)
+				builder.append(' ');
+			builder.append(args[j]);
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * @param index Index of the argument
+	 * @return The argument parsed as an integer
+	 * @throws IllegalArgumentException When the argument is missing or not an integer
+	 */
+	public int intArg(int index) {
+		if(index >= args.length)
+			throw new IllegalArgumentException("Missing argument " + index + " for " + name);
+		return Integer.parseInt(args[index]);
+	}
+
+	public int sender() {
+		return sender;
+	}
+
+	public String senderTag() {
+		return senderTag;
+	}
+
+	/**
+	 * @return The command as it would be typed
+	 */
+	@Override
+	public String toString() {
+		return args.length == 0 ? name : name + " " + argsFrom(0);
+	}
+}
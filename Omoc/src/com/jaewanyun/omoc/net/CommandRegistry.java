@@ -0,0 +1,103 @@
+package com.jaewanyun.omoc.net;
+import java.util.HashMap;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Jaewan Yun <jay50@pitt.edu>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+/**
+ * Routes commands to handlers by name with a single hash lookup
+ * Used by clients for game commands and by the server for requests addressed to it
+ *
+ * @author Jaewan Yun <jay50@pitt.edu>
+ */
+public class CommandRegistry {
+
+	/**
+	 * Handles one command
+	 */
+	public interface Handler {
+		/**
+		 * @param command The command to handle
+		 * @return A reply for the sender, or null if there is none
+		 */
+		Object handle(Command command);
+	}
+
+	private final HashMap<String, Handler> handlers;
+
+	public CommandRegistry() {
+		handlers = new HashMap<>();
+	}
+
+	/**
+	 * @param name The first word of the command
+	 * @param handler Handler to run for the command
+	 * @return This registry
+	 */
+	public synchronized CommandRegistry register(String name, Handler handler) {
+		if(name == null || handler == null)
+			throw new IllegalArgumentException();
+		handlers.put(name, handler);
+		return this;
+	}
+
+	public synchronized boolean isRegistered(String name) {
+		return handlers.containsKey(name);
+	}
+
+	/**
+	 * Tokenizes a typed line once
+	 *
+	 * @param line The line typed by a user
+	 * @param sender Identification number of the sender
+	 * @param senderTag Name shown for the sender
+	 * @return A command if the first word is registered, else null meaning the line is chat
+	 */
+	public Command parse(String line, int sender, String senderTag) {
+		String[] tokens = Command.tokenize(line);
+		if(tokens.length == 0 || !isRegistered(tokens[0]))
+			return null;
+
+		String[] args = new String[tokens.length - 1];
+		System.arraycopy(tokens, 1, args, 0, args.length);
+		return new Command(tokens[0], args, sender, senderTag);
+	}
+
+	/**
+	 * Runs the handler registered for the command
+	 *
+	 * @param command The command to run
+	 * @return The reply of the handler, or null
+	 * @throws IllegalArgumentException When no handler is registered under the name of the command
+	 */
+	public Object dispatch(Command command) {
+		Handler handler;
+		synchronized(this) {
+			handler = handlers.get(command.name());
+		}
+		if(handler == null)
+			throw new IllegalArgumentException("Unknown command: " + command.name());
+		return handler.handle(command);
+	}
+}
@@ -54,6 +54,19 @@ public class CompressedBlockOutputStream extends FilterOutputStream {
 	 */
 	private Deflater deflater = null;
 
+	/**
+	 * Time spent deflating and the bytes in and out of the deflater,
+	 * shared by every stream in the process
+	 */
+	private static final Histogram deflateNanos = Metrics.shared().histogram("deflate.nanos");
+	private static final Counter rawBytes = Metrics.shared().counter("deflate.bytes.raw");
+	private static final Counter compressedBytes = Metrics.shared().counter("deflate.bytes.compressed");
+
+	static {
+		Metrics.shared().gauge("deflate.ratio.percent", () ->
+			rawBytes.get() == 0 ? 100 : compressedBytes.get() * 100 / rawBytes.get());
+	}
+
 	/**
 	 * Constructs a CompressedBlockOutputStream that writes to
 	 * the given underlying output stream 'os' and sends a compressed
@@ -83,9 +96,13 @@ public class CompressedBlockOutputStream extends FilterOutputStream {
 
 	protected void compressAndSend() throws IOException {
 		if (len > 0) {
+			long start = System.nanoTime();
 			deflater.setInput(inBuf, 0, len);
 			deflater.finish();
 			int size = deflater.deflate(outBuf);
+			deflateNanos.recordSince(start);
+			rawBytes.add(len);
+			compressedBytes.add(size);
 
 			// Write the size of the compressed data, followed
 			// by the size of the uncompressed data
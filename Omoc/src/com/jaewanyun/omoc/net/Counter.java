@@ -0,0 +1,64 @@
+package com.jaewanyun.omoc.net;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Jaewan Yun <jay50@pitt.edu>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+/**
+ * A lock-free counter that many threads may add to at once
+ * A counter may roll up into a parent, e.g. the bytes of one connection into the bytes of the server
+ *
+ * @author Jaewan Yun <jay50@pitt.edu>
+ */
+public final class Counter {
+
+	private final LongAdder value;
+	private final Counter parent;
+
+	public Counter() {
+		this(null);
+	}
+
+	/**
+	 * @param parent Also receives everything added to this counter, or null
+	 */
+	public Counter(Counter parent) {
+		this.value = new LongAdder();
+		this.parent = parent;
+	}
+
+	public void increment() {
+		add(1);
+	}
+
+	public void add(long amount) {
+		value.add(amount);
+		if(parent != null)
+			parent.add(amount);
+	}
+
+	public long get() {
+		return value.sum();
+	}
+}
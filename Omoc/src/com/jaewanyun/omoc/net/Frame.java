@@ -0,0 +1,93 @@
+package com.jaewanyun.omoc.net;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Jaewan Yun <jay50@pitt.edu>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+/**
+ * A message serialized once and shared by every connection it is written to
+ * Frames are immutable; the payload is never written after construction
+ *
+ * @author Jaewan Yun <jay50@pitt.edu>
+ */
+public final class Frame implements Serializable {
+
+	private static final long serialVersionUID = 4410928374651028L;
+	private final long sequence;
+	private final boolean snapshot;
+	private final byte[] payload;
+
+	private Frame(long sequence, boolean snapshot, byte[] payload) {
+		this.sequence = sequence;
+		this.snapshot = snapshot;
+		this.payload = payload;
+	}
+
+	/**
+	 * Serializes a message into a frame
+	 *
+	 * @param sequence Position of the frame in its stream
+	 * @param snapshot True if the message replaces the state carried by every frame before it
+	 * @param message The message to encode
+	 * @return The encoded frame
+	 * @throws IOException When the message cannot be serialized
+	 */
+	static Frame encode(long sequence, boolean snapshot, Object message) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		try(ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(message);
+		}
+		return new Frame(sequence, snapshot, bytes.toByteArray());
+	}
+
+	/**
+	 * Deserializes the message; each call returns a new copy
+	 *
+	 * @return The message carried by this frame
+	 * @throws IOException When the payload cannot be read
+	 * @throws ClassNotFoundException When the class of the message is unknown
+	 */
+	public Object decode() throws IOException, ClassNotFoundException {
+		try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(payload))) {
+			return in.readObject();
+		}
+	}
+
+	public long sequence() {
+		return sequence;
+	}
+
+	public boolean isSnapshot() {
+		return snapshot;
+	}
+
+	public int size() {
+		return payload.length;
+	}
+}
@@ -0,0 +1,118 @@
+package com.jaewanyun.omoc.net;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Jaewan Yun <jay50@pitt.edu>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+/**
+ * A ring buffer of the latest frames of one stream
+ * One thread publishes at a time; any number of readers follow it with their own cursor and never block the publisher
+ * A reader that falls a full ring behind finds its frames overwritten and skips ahead to the latest snapshot
+ *
+ * @author Jaewan Yun <jay50@pitt.edu>
+ */
+final class FrameRing {
+
+	private final AtomicReferenceArray<Frame> frames;
+	private final int mask;
+	private volatile long next; // Sequence of the next frame to publish
+	private volatile Frame latestSnapshot;
+
+	/**
+	 * @param capacity Number of frames kept; rounded up to a power of two
+	 */
+	FrameRing(int capacity) {
+		int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+		frames = new AtomicReferenceArray<>(size);
+		mask = size - 1;
+	}
+
+	/**
+	 * Encodes a message once and makes it visible to every reader
+	 *
+	 * @param message The message to publish
+	 * @param snapshot True if the message replaces the state carried by every frame before it
+	 * @return The published frame
+	 * @throws IOException When the message cannot be serialized
+	 */
+	synchronized Frame publish(Object message, boolean snapshot) throws IOException {
+		Frame frame = Frame.encode(next, snapshot, message);
+		frames.set((int) next & mask, frame);
+		if(snapshot)
+			latestSnapshot = frame;
+		next++;
+		notifyAll();
+		return frame;
+	}
+
+	/**
+	 * Publishes a frame encoded elsewhere under its own sequence number, e.g. by the server a relay follows
+	 * Sequence numbers skipped by the frame are left empty; a frame older than the ring only updates the latest snapshot
+	 *
+	 * @param frame The frame to publish
+	 */
+	synchronized void publish(Frame frame) {
+		long sequence = frame.sequence();
+		if(frame.isSnapshot() && (latestSnapshot == null || latestSnapshot.sequence() < sequence))
+			latestSnapshot = frame;
+		if(sequence < next)
+			return;
+		frames.set((int) sequence & mask, frame);
+		next = sequence + 1;
+		notifyAll();
+	}
+
+	/**
+	 * @param sequence Sequence of a frame
+	 * @return The frame, or null if it has not been published yet or has been overwritten
+	 */
+	Frame get(long sequence) {
+		Frame frame = frames.get((int) sequence & mask);
+		return frame != null && frame.sequence() == sequence ? frame : null;
+	}
+
+	/**
+	 * Blocks until the frame at a sequence has been published
+	 *
+	 * @param sequence Sequence of the frame to wait for
+	 * @throws InterruptedException When the waiting thread is interrupted
+	 */
+	synchronized void await(long sequence) throws InterruptedException {
+		while(next <= sequence)
+			wait();
+	}
+
+	long next() {
+		return next;
+	}
+
+	Frame latestSnapshot() {
+		return latestSnapshot;
+	}
+
+	int capacity() {
+		return mask + 1;
+	}
+}
@@ -0,0 +1,57 @@
+package com.jaewanyun.omoc.net;
+import java.io.Serializable;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Jaewan Yun <jay50@pitt.edu>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+/**
+ * The first message of a client on every connection
+ * A client reconnecting after losing its connection names the session it had and the last frame it received,
+ * so that the server only sends what it missed
+ *
+ * @author Jaewan Yun <jay50@pitt.edu>
+ */
+final class Hello implements Serializable {
+
+	private static final long serialVersionUID = 2204719968301157L;
+	private final long token;
+	private final long lastSequence;
+
+	/**
+	 * @param token Token of the session to resume, or 0 for a new session
+	 * @param lastSequence Sequence of the last frame received, or -1
+	 */
+	Hello(long token, long lastSequence) {
+		this.token = token;
+		this.lastSequence = lastSequence;
+	}
+
+	long token() {
+		return token;
+	}
+
+	long lastSequence() {
+		return lastSequence;
+	}
+}
@@ -0,0 +1,334 @@
+package com.jaewanyun.omoc.net;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Jaewan Yun <jay50@pitt.edu>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+/**
+ * Connections between a client and a server in the same process, e.g. for tests, bots and load generation
+ * Messages are handed over by reference through bounded queues; nothing is serialized, compressed or sent through the kernel
+ * Frames from the server are already encoded and are decoded by each client as they are over a socket
+ * A message must not be changed once written, since the reader receives the same object
+ *
+ * Addresses are names bound within the process; any transport with the same name reaches the same server
+ *
+ * @author Jaewan Yun <jay50@pitt.edu>
+ */
+public final class LoopbackTransport implements Transport {
+
+	private static final ConcurrentHashMap<String, Backlog> bound = new ConcurrentHashMap<>();
+	private static final int PIPE_CAPACITY = 1024; // Messages in flight each way before a writer blocks, as on a full socket
+	private final String name;
+
+	/**
+	 * @param name The address within this process
+	 */
+	public LoopbackTransport(String name) {
+		if(name == null)
+			throw new IllegalArgumentException();
+		this.name = name;
+	}
+
+	@Override
+	public Link connect() throws IOException {
+		Backlog backlog = bound.get(name);
+		if(backlog == null)
+			throw new ConnectException("Connection refused: " + this);
+
+		Pipe up = new Pipe();
+		Pipe down = new Pipe();
+		if(!backlog.offer(new PipeLink(up, down)))
+			throw new ConnectException("Connection refused: " + this);
+		return new PipeLink(down, up);
+	}
+
+	/**
+	 * Acceptors take connections from one queue, so there is one listener for all
+	 */
+	@Override
+	public Listener[] listen(int count, int backlog) throws IOException {
+		Backlog pending = new Backlog(Math.max(1, backlog));
+		if(bound.putIfAbsent(name, pending) != null)
+			throw new IOException("Address already in use: " + this);
+		return new Listener[] {new Listener() {
+			@Override
+			public Link accept() throws IOException {
+				return pending.take();
+			}
+
+			@Override
+			public void close() {
+				bound.remove(name, pending);
+				pending.close();
+			}
+		}};
+	}
+
+	@Override
+	public String name() {
+		return "loopback." + name;
+	}
+
+	@Override
+	public String toString() {
+		return "loopback:" + name;
+	}
+
+	/*
+	 * Object streams over a loopback link, used in place of the serializing streams
+	 */
+	static boolean isLoopback(Link link) {
+		return link instanceof PipeLink;
+	}
+
+	static ObjectOutputStream openOutputStream(Link link) throws IOException {
+		return new PipeOutputStream(((PipeLink) link).output);
+	}
+
+	static ObjectInputStream openInputStream(Link link) throws IOException {
+		return new PipeInputStream((PipeLink) link);
+	}
+
+	/*
+	 * Connections made but not yet accepted
+	 */
+	private static final class Backlog {
+		private final ArrayDeque<PipeLink> links;
+		private final int capacity;
+		private boolean closed;
+
+		private Backlog(int capacity) {
+			this.links = new ArrayDeque<>();
+			this.capacity = capacity;
+		}
+
+		private synchronized boolean offer(PipeLink link) {
+			if(closed || links.size() == capacity)
+				return false;
+			links.addLast(link);
+			notifyAll();
+			return true;
+		}
+
+		private synchronized PipeLink take() throws IOException {
+			try {
+				while(!closed && links.isEmpty())
+					wait();
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+			if(closed)
+				throw new IOException("Listener closed");
+			return links.removeFirst();
+		}
+
+		private synchronized void close() {
+			closed = true;
+			for(PipeLink link : links)
+				link.close();
+			links.clear();
+			notifyAll();
+		}
+	}
+
+	/*
+	 * Messages going one way
+	 * Ending the pipe is a graceful close: the reader gets what was written before the end of the stream, and writers fail
+	 * Closing it drops what was not read and fails the reader; writes are dropped too, as a socket takes writes to a closed
+	 * peer, so that a reply already on its way can still be read, e.g. why a connection was rejected
+	 */
+	private static final class Pipe {
+		private final ArrayDeque<Object> messages = new ArrayDeque<>();
+		private boolean ended;
+		private boolean closed;
+
+		private synchronized void put(Object message) throws IOException {
+			try {
+				while(!ended && !closed && messages.size() == PIPE_CAPACITY)
+					wait();
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+			if(ended)
+				throw new IOException("Connection closed");
+			if(closed)
+				return;
+			messages.addLast(message);
+			notifyAll();
+		}
+
+		/*
+		 * Waits at most the timeout for a message, or for as long as it takes if the timeout is 0
+		 */
+		private synchronized Object take(int timeoutMillis) throws IOException {
+			long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+			try {
+				while(!ended && !closed && messages.isEmpty()) {
+					if(timeoutMillis == 0) {
+						wait();
+					} else {
+						long remaining = deadline - System.nanoTime();
+						if(remaining <= 0)
+							throw new SocketTimeoutException("Read timed out");
+						TimeUnit.NANOSECONDS.timedWait(this, remaining);
+					}
+				}
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+			if(closed)
+				throw new IOException("Connection closed");
+			if(messages.isEmpty())
+				throw new EOFException();
+			Object message = messages.removeFirst();
+			notifyAll();
+			return message;
+		}
+
+		private synchronized void end() {
+			ended = true;
+			notifyAll();
+		}
+
+		private synchronized void close() {
+			closed = true;
+			messages.clear();
+			notifyAll();
+		}
+	}
+
+	/*
+	 * One end of a connection; closing it ends what it writes and drops what it has not read, like closing a socket
+	 */
+	private static final class PipeLink implements Link {
+		private final Pipe input;
+		private final Pipe output;
+		private volatile int readTimeoutMillis;
+
+		private PipeLink(Pipe input, Pipe output) {
+			this.input = input;
+			this.output = output;
+		}
+
+		/**
+		 * There are no bytes to read; messages are read with the object stream of the link
+		 */
+		@Override
+		public InputStream input() {
+			return InputStream.nullInputStream();
+		}
+
+		/**
+		 * There are no bytes to write; messages are written with the object stream of the link
+		 */
+		@Override
+		public OutputStream output() throws IOException {
+			throw new IOException("Messages are passed by reference over " + LoopbackTransport.class.getSimpleName());
+		}
+
+		@Override
+		public void setReadTimeout(int millis) {
+			readTimeoutMillis = millis;
+		}
+
+		@Override
+		public void shutdownOutput() {
+			output.end();
+		}
+
+		@Override
+		public void close() {
+			output.end();
+			input.close();
+		}
+	}
+
+	/*
+	 * Writes each message to the pipe as it is; there is nothing to buffer, flush or forget
+	 */
+	private static final class PipeOutputStream extends ObjectOutputStream {
+		private final Pipe pipe;
+
+		private PipeOutputStream(Pipe pipe) throws IOException {
+			super();
+			this.pipe = pipe;
+		}
+
+		@Override
+		protected void writeObjectOverride(Object message) throws IOException {
+			pipe.put(message);
+		}
+
+		@Override
+		public void flush() {
+			// Do nothing
+		}
+
+		@Override
+		public void reset() {
+			// Do nothing
+		}
+
+		@Override
+		public void close() {
+			pipe.end();
+		}
+	}
+
+	/*
+	 * Reads each message from the pipe as it was written, honoring the read timeout of the link
+	 */
+	private static final class PipeInputStream extends ObjectInputStream {
+		private final PipeLink link;
+
+		private PipeInputStream(PipeLink link) throws IOException {
+			super();
+			this.link = link;
+		}
+
+		@Override
+		protected Object readObjectOverride() throws IOException {
+			return link.input.take(link.readTimeoutMillis);
+		}
+
+		@Override
+		public void close() {
+			link.input.close();
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package com.jaewanyun.omoc.net;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Jaewan Yun <jay50@pitt.edu>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+/**
+ * Streams counting the bytes that pass through them into a Counter
+ *
+ * @author Jaewan Yun <jay50@pitt.edu>
+ */
+final class MeteredStreams {
+
+	private MeteredStreams() {throw new UnsupportedOperationException();}
+
+	static OutputStream output(OutputStream out, Counter written) {
+		return written == null ? out : new FilterOutputStream(out) {
+			@Override
+			public void write(int b) throws IOException {
+				out.write(b);
+				written.increment();
+			}
+
+			@Override
+			public void write(byte[] b, int offset, int length) throws IOException {
+				out.write(b, offset, length);
+				written.add(length);
+			}
+		};
+	}
+
+	static InputStream input(InputStream in, Counter read) {
+		return read == null ? in : new FilterInputStream(in) {
+			@Override
+			public int read() throws IOException {
+				int b = in.read();
+				if(b >= 0)
+					read.increment();
+				return b;
+			}
+
+			@Override
+			public int read(byte[] b, int offset, int length) throws IOException {
+				int n = in.read(b, offset, length);
+				if(n > 0)
+					read.add(n);
+				return n;
+			}
+		};
+	}
+}
@@ -0,0 +1,266 @@
+package com.jaewanyun.omoc.net;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Jaewan Yun <jay50@pitt.edu>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+/**
+ * A registry of named counters, histograms and gauges for the process
+ * Updating a metric never locks; reading one is only as consistent as a scan of its cells
+ * Metrics are read through the platform MBean server or a periodic text dump
+ *
+ * @author Jaewan Yun <jay50@pitt.edu>
+ */
+public final class Metrics {
+
+	private static final Metrics shared = new Metrics();
+	private final ConcurrentSkipListMap<String, Counter> counters;
+	private final ConcurrentSkipListMap<String, Histogram> histograms;
+	private final ConcurrentSkipListMap<String, LongSupplier> gauges;
+	private final ConcurrentSkipListMap<String, Supplier<String>> reports;
+	private final HashMap<String, Long> previousCounts; // Guarded by this; counts at the last dump
+	private long previousDump; // Guarded by this
+
+	private Metrics() {
+		counters = new ConcurrentSkipListMap<>();
+		histograms = new ConcurrentSkipListMap<>();
+		gauges = new ConcurrentSkipListMap<>();
+		reports = new ConcurrentSkipListMap<>();
+		previousCounts = new HashMap<>();
+		previousDump = System.nanoTime();
+	}
+
+	/**
+	 * @return The registry shared by every server and client in the process
+	 */
+	public static Metrics shared() {
+		return shared;
+	}
+
+	/**
+	 * @param name Name of the counter
+	 * @return The counter of that name, created on first use
+	 */
+	public Counter counter(String name) {
+		return counters.computeIfAbsent(name, key -> new Counter());
+	}
+
+	/**
+	 * @param name Name of the histogram
+	 * @return The histogram of that name, created on first use
+	 */
+	public Histogram histogram(String name) {
+		return histograms.computeIfAbsent(name, key -> new Histogram());
+	}
+
+	/**
+	 * @param name Name of the gauge; a gauge of the same name is replaced
+	 * @param value Read whenever the gauge is
+	 */
+	public void gauge(String name, LongSupplier value) {
+		gauges.put(name, value);
+	}
+
+	/**
+	 * @param name Name of the report; a report of the same name is replaced
+	 * @param report Lines of free text appended to each dump, e.g. one line per connection
+	 */
+	public void report(String name, Supplier<String> report) {
+		reports.put(name, report);
+	}
+
+	/**
+	 * Removes every metric whose name starts with a prefix, e.g. those of a closed server
+	 *
+	 * @param prefix The prefix of the names
+	 */
+	public void removeAll(String prefix) {
+		counters.keySet().removeIf(name -> name.startsWith(prefix));
+		histograms.keySet().removeIf(name -> name.startsWith(prefix));
+		gauges.keySet().removeIf(name -> name.startsWith(prefix));
+		reports.keySet().removeIf(name -> name.startsWith(prefix));
+	}
+
+	/**
+	 * Counters are shown with their rate per second since the previous dump
+	 * Histograms are shown in microseconds if their name ends in nanos
+	 *
+	 * @return Every metric as text, one per line
+	 */
+	public synchronized String dump() {
+		long now = System.nanoTime();
+		double seconds = Math.max(1, now - previousDump) / 1e9;
+		previousDump = now;
+
+		StringBuilder builder = new StringBuilder();
+		for(Map.Entry<String, Counter> entry : counters.entrySet()) {
+			long value = entry.getValue().get();
+			Long previous = previousCounts.put(entry.getKey(), value);
+			long rate = Math.round((value - (previous == null ? 0 : previous)) / seconds);
+			builder.append(entry.getKey()).append(' ').append(value).append(" (").append(rate).append("/s)\n");
+		}
+		for(Map.Entry<String, LongSupplier> entry : gauges.entrySet())
+			builder.append(entry.getKey()).append(' ').append(entry.getValue().getAsLong()).append('\n');
+		for(Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+			Histogram histogram = entry.getValue();
+			boolean nanos = entry.getKey().endsWith("nanos");
+			builder.append(entry.getKey()).append(" count=").append(histogram.count())
+					.append(" mean=").append(scale(histogram.mean(), nanos))
+					.append(" p50=").append(scale(histogram.percentile(50), nanos))
+					.append(" p99=").append(scale(histogram.percentile(99), nanos))
+					.append(" p99.9=").append(scale(histogram.percentile(99.9), nanos))
+					.append(" max=").append(scale(histogram.max(), nanos))
+					.append(nanos ? " us\n" : "\n");
+		}
+		for(Map.Entry<String, Supplier<String>> entry : reports.entrySet())
+			builder.append(entry.getKey()).append('\n').append(entry.getValue().get());
+		return builder.toString();
+	}
+
+	private static long scale(long value, boolean nanos) {
+		return nanos ? value / 1000 : value;
+	}
+
+	/**
+	 * Prints a dump on a daemon thread at a fixed period
+	 *
+	 * @param periodMillis Time between dumps
+	 * @param out Where to print
+	 */
+	public void startDump(long periodMillis, PrintStream out) {
+		Thread dumper = new Thread(() -> {
+			try {
+				while(true) {
+					Thread.sleep(periodMillis);
+					out.print(dump());
+					out.println();
+				}
+			} catch (InterruptedException ie) {
+				// Do nothing
+			}
+		}, "metrics-dump");
+		dumper.setDaemon(true);
+		dumper.start();
+	}
+
+	/**
+	 * Registers this registry with the platform MBean server as com.jaewanyun.omoc:type=Metrics
+	 * Counters and gauges are attributes of their own name; histograms have one attribute per statistic
+	 *
+	 * @throws JMException When the bean cannot be registered, e.g. because it already is
+	 */
+	public void registerMBean() throws JMException {
+		ManagementFactory.getPlatformMBeanServer().registerMBean(new View(), new ObjectName("com.jaewanyun.omoc:type=Metrics"));
+	}
+
+	/*
+	 * Attributes are listed afresh on every call so that metrics registered later show up
+	 */
+	private class View implements DynamicMBean {
+
+		private final String[] statistics = {"count", "mean", "p50", "p99", "p999", "max"};
+
+		@Override
+		public Object getAttribute(String attribute) throws AttributeNotFoundException {
+			Counter counter = counters.get(attribute);
+			if(counter != null)
+				return counter.get();
+			LongSupplier gauge = gauges.get(attribute);
+			if(gauge != null)
+				return gauge.getAsLong();
+
+			int dot = attribute.lastIndexOf('.');
+			Histogram histogram = dot < 0 ? null : histograms.get(attribute.substring(0, dot));
+			if(histogram != null) {
+				switch(attribute.substring(dot + 1)) {
+					case "count": return histogram.count();
+					case "mean": return histogram.mean();
+					case "p50": return histogram.percentile(50);
+					case "p99": return histogram.percentile(99);
+					case "p999": return histogram.percentile(99.9);
+					case "max": return histogram.max();
+					default: break;
+				}
+			}
+			throw new AttributeNotFoundException(attribute);
+		}
+
+		@Override
+		public AttributeList getAttributes(String[] attributes) {
+			AttributeList list = new AttributeList();
+			for(String attribute : attributes) {
+				try {
+					list.add(new Attribute(attribute, getAttribute(attribute)));
+				} catch (AttributeNotFoundException anfe) {
+					// Left out of the list
+				}
+			}
+			return list;
+		}
+
+		@Override
+		public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+			throw new AttributeNotFoundException("Metrics are read only");
+		}
+
+		@Override
+		public AttributeList setAttributes(AttributeList attributes) {
+			return new AttributeList();
+		}
+
+		@Override
+		public Object invoke(String action, Object[] params, String[] signature) {
+			return "dump".equals(action) ? dump() : null;
+		}
+
+		@Override
+		public MBeanInfo getMBeanInfo() {
+			HashMap<String, MBeanAttributeInfo> attributes = new HashMap<>();
+			for(String name : counters.keySet())
+				attributes.put(name, new MBeanAttributeInfo(name, "long", "Counter", true, false, false));
+			for(String name : gauges.keySet())
+				attributes.put(name, new MBeanAttributeInfo(name, "long", "Gauge", true, false, false));
+			for(String name : histograms.keySet())
+				for(String statistic : statistics)
+					attributes.put(name + "." + statistic, new MBeanAttributeInfo(name + "." + statistic, "long", "Histogram", true, false, false));
+			return new MBeanInfo(Metrics.class.getName(), "Omoc metrics",
+					attributes.values().toArray(new MBeanAttributeInfo[0]), null, null, null);
+		}
+	}
+}
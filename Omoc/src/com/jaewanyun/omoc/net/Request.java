@@ -0,0 +1,52 @@
+package com.jaewanyun.omoc.net;
+import java.io.Serializable;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Jaewan Yun <jay50@pitt.edu>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+/**
+ * A command sent to the server as a request with an id that its response carries back
+ * Several requests may be outstanding at once; responses are matched to them by id, not by order
+ *
+ * @author Jaewan Yun <jay50@pitt.edu>
+ */
+final class Request implements Serializable {
+
+	private static final long serialVersionUID = 3318406627915204L;
+	private final long id;
+	private final Command command;
+
+	Request(long id, Command command) {
+		this.id = id;
+		this.command = command;
+	}
+
+	long id() {
+		return id;
+	}
+
+	Command command() {
+		return command;
+	}
+}
@@ -0,0 +1,62 @@
+package com.jaewanyun.omoc.net;
+import java.io.Serializable;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Jaewan Yun <jay50@pitt.edu>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+/**
+ * The reply of the server to a request, or the reason the request failed
+ *
+ * @author Jaewan Yun <jay50@pitt.edu>
+ */
+final class Response implements Serializable {
+
+	private static final long serialVersionUID = 8841029375562018L;
+	private final long id;
+	private final Object value;
+	private final String error;
+
+	/**
+	 * @param id Id of the request answered
+	 * @param value Reply of the handler, or null
+	 * @param error Reason the request failed, or null if it succeeded
+	 */
+	Response(long id, Object value, String error) {
+		this.id = id;
+		this.value = value;
+		this.error = error;
+	}
+
+	long id() {
+		return id;
+	}
+
+	Object value() {
+		return value;
+	}
+
+	String error() {
+		return error;
+	}
+}
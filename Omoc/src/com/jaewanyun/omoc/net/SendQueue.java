@@ -0,0 +1,150 @@
+package com.jaewanyun.omoc.net;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Jaewan Yun <jay50@pitt.edu>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+/**
+ * A bounded queue of messages waiting to be written to one connection
+ * A state replaces the state queued before it if that one has not been taken yet, since only the latest state matters;
+ * the newer state takes the place at the back of the queue so that nothing queued before it is overtaken
+ * Producers are told when the queue is full instead of letting it grow while the connection stalls
+ *
+ * @author Jaewan Yun <jay50@pitt.edu>
+ */
+final class SendQueue {
+
+	private final ArrayDeque<Object> messages;
+	private final int capacity;
+	private Object pendingState; // The state in the queue, if any
+	private boolean closed;
+	private final Counter coalesced;
+	private final Counter rejected;
+
+	/**
+	 * @param capacity Most messages held at once
+	 * @param coalesced Counts states replaced before they were written
+	 * @param rejected Counts messages refused because the queue was full or closed
+	 */
+	SendQueue(int capacity, Counter coalesced, Counter rejected) {
+		if(capacity <= 0)
+			throw new IllegalArgumentException();
+		this.messages = new ArrayDeque<>(capacity);
+		this.capacity = capacity;
+		this.coalesced = coalesced;
+		this.rejected = rejected;
+	}
+
+	/**
+	 * Queues a message without blocking
+	 *
+	 * @param message The message, possibly in a trace envelope
+	 * @return False if the queue is full or closed
+	 */
+	synchronized boolean offer(Object message) {
+		if(closed) {
+			rejected.increment();
+			return false;
+		}
+		boolean state = isState(message);
+		if(state && pendingState != null) {
+			remove(pendingState);
+			coalesced.increment();
+		} else if(messages.size() == capacity) {
+			rejected.increment();
+			return false;
+		}
+		messages.addLast(message);
+		if(state)
+			pendingState = message;
+		notifyAll();
+		return true;
+	}
+
+	/**
+	 * Queues a message, waiting for room if the queue is full
+	 *
+	 * @param message The message, possibly in a trace envelope
+	 * @return False if the queue was closed
+	 * @throws InterruptedException When the waiting thread is interrupted
+	 */
+	synchronized boolean put(Object message) throws InterruptedException {
+		while(!closed && messages.size() == capacity && !(pendingState != null && isState(message)))
+			wait();
+		return offer(message);
+	}
+
+	/**
+	 * Blocks until a message is queued
+	 *
+	 * @return The oldest message, or null once the queue is closed
+	 * @throws InterruptedException When the waiting thread is interrupted
+	 */
+	synchronized Object take() throws InterruptedException {
+		while(!closed && messages.isEmpty())
+			wait();
+		if(closed)
+			return null;
+		Object message = messages.removeFirst();
+		if(message == pendingState)
+			pendingState = null;
+		notifyAll();
+		return message;
+	}
+
+	/**
+	 * Drops every queued message and refuses any more
+	 */
+	synchronized void close() {
+		closed = true;
+		messages.clear();
+		pendingState = null;
+		notifyAll();
+	}
+
+	synchronized int size() {
+		return messages.size();
+	}
+
+	int capacity() {
+		return capacity;
+	}
+
+	/*
+	 * By identity, since a state may equal an older one
+	 */
+	private void remove(Object message) {
+		for(Iterator<Object> iterator = messages.iterator(); iterator.hasNext();) {
+			if(iterator.next() == message) {
+				iterator.remove();
+				return;
+			}
+		}
+	}
+
+	private static boolean isState(Object message) {
+		return Server.isState(message instanceof Traced ? ((Traced) message).message() : message);
+	}
+}
@@ -1,12 +1,19 @@
 package com.jaewanyun.omoc.net;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
 /*
  * The MIT License
@@ -39,13 +46,50 @@ import java.util.Random;
  */
 public class Server implements Runnable {
 
-	private volatile int port;
-	private volatile HashMap<Integer, ConnectionTask> connections;
-	private volatile ArrayList<Integer> ids;
+	private final Transport transport;
+	private final String name; // Of the transport, naming the metrics and threads of this server
+	private volatile ConcurrentHashMap<Integer, ConnectionTask> connections; // Shared by every acceptor
+	private volatile List<Integer> ids;
 	private volatile boolean usingCompression;
-	private volatile ServerSocket serverSocket;
-	private volatile Thread connectionListener;
-	private volatile static HashMap<Integer, Server> serverList; // Servers cannot share a same port
+	private volatile Transport.Listener[] listeners; // One per acceptor where the address can be shared, else one for all
+	private volatile Thread[] acceptors;
+	private volatile boolean accepting;
+	private volatile boolean shutDown;
+	private final int acceptorCount;
+	private volatile static HashMap<String, Server> serverList; // Servers cannot share a same address, by the name of the transport
+	private final CommandRegistry requests;
+	private volatile ServerListener listener;
+	private final FrameRing frames; // Every relayed message, encoded once for all connections
+	private final Client upstream; // The server this one relays, or null if it runs the game itself
+	private final Counter accepted;
+	private final Counter messagesIn;
+	private final Counter messagesOut;
+	private final Counter bytesIn;
+	private final Counter bytesOut;
+	private final Histogram flushNanos; // Writing and flushing one message, or one batch of frames
+	private final Histogram fanOutNanos; // Publishing one message to every connection
+	private final Counter heartbeats;
+	private final Counter reapedIdle; // Connections that sent nothing, not even a heartbeat, for the idle timeout
+	private final Counter reapedStuck; // Connections whose write did not finish within the idle timeout
+	private volatile long heartbeatNanos = TimeUnit.SECONDS.toNanos(5);
+	private volatile long idleTimeoutNanos = TimeUnit.SECONDS.toNanos(20);
+	private volatile Thread heartbeat;
+	private volatile Thread reaper;
+	private final ConcurrentHashMap<Long, Detached> detached; // Sessions whose connection was lost, by token
+	private final SecureRandom tokens;
+	private volatile long resumeWindowNanos = TimeUnit.SECONDS.toNanos(60);
+	private final Counter resumed;
+	private final Counter expired; // Sessions not resumed within the window
+	private static final int FRAME_CAPACITY = 1024;
+	private static final long NEW_SESSION = Long.MIN_VALUE;
+	private volatile Admission admission;
+	private double acceptTokens; // Guarded by admissionLock
+	private long acceptRefilled;
+	private final Object admissionLock = new Object();
+	private final Counter rejectedFull;
+	private final Counter throttled; // Accepts that waited for the accept rate
+	private final Histogram admissionNanos; // Time spent waiting for the accept rate
+	private static final long FULL_RETRY_MILLIS = 5000;
 
 	/*
 	 * Prevent default constructor call
@@ -55,17 +99,60 @@ public class Server implements Runnable {
 	/*
 	 * Private constructor to be called from the static factory
 	 */
-	private Server(int port, boolean usingCompression) {
-		this.port = port;
+	private Server(Transport transport, boolean usingCompression, Client upstream, Admission admission, int acceptorCount) {
+		if(acceptorCount <= 0)
+			throw new IllegalArgumentException();
+
+		this.transport = transport;
+		this.name = transport.name();
 		this.usingCompression = usingCompression;
+		this.upstream = upstream;
+		this.admission = admission;
+		this.acceptorCount = acceptorCount;
+		this.acceptTokens = admission.burst();
+		this.acceptRefilled = System.nanoTime();
+
+		connections = new ConcurrentHashMap<>();
+		ids = Collections.synchronizedList(new ArrayList<>());
+		requests = createRequests();
+		frames = new FrameRing(FRAME_CAPACITY);
+		detached = new ConcurrentHashMap<>();
+		tokens = new SecureRandom();
+
+		// Metrics of this server are named server.(name of the transport).*, e.g. server.(port).* over TCP
+		Metrics metrics = Metrics.shared();
+		String prefix = "server." + name + ".";
+		accepted = metrics.counter(prefix + "accepted");
+		messagesIn = metrics.counter(prefix + "messages.in");
+		messagesOut = metrics.counter(prefix + "messages.out");
+		bytesIn = metrics.counter(prefix + "bytes.in");
+		bytesOut = metrics.counter(prefix + "bytes.out");
+		flushNanos = metrics.histogram(prefix + "flush.nanos");
+		fanOutNanos = metrics.histogram(prefix + "fanout.nanos");
+		heartbeats = metrics.counter(prefix + "heartbeats");
+		reapedIdle = metrics.counter(prefix + "reaped.idle");
+		reapedStuck = metrics.counter(prefix + "reaped.stuck");
+		resumed = metrics.counter(prefix + "sessions.resumed");
+		expired = metrics.counter(prefix + "sessions.expired");
+		rejectedFull = metrics.counter(prefix + "rejected.full");
+		throttled = metrics.counter(prefix + "accept.throttled");
+		admissionNanos = metrics.histogram(prefix + "accept.wait.nanos");
+		metrics.gauge(prefix + "connections", () -> connections.size());
+		metrics.gauge(prefix + "spectators", this::spectatorCount);
+		metrics.gauge(prefix + "sessions.detached", () -> detached.size());
+		metrics.gauge(prefix + "frames", frames::next);
+		metrics.gauge(prefix + "listeners", () -> listeners.length);
+		metrics.report(prefix + "connections", this::connectionReport);
 
-		connections = new HashMap<>();
-		ids = new ArrayList<>();
+		serverList.put(name, this);
 
-		serverList.put(port, this);
+		// Frames from upstream keep their sequence numbers so that gaps can be seen on every node
+		if(upstream != null)
+			upstream.follow(frames::publish, () -> System.out.println("Closed the upstream server of relay: " + transport));
 
 		createSocket();
 		start();
+		startKeepAlive();
 	}
 
 	/**
@@ -86,29 +173,125 @@ public class Server implements Runnable {
 	 * @return A singleton server with respect to port number with an option to use compression
 	 */
 	public static synchronized Server getServer(int port, boolean usingCompression) {
+		return getServer(port, usingCompression, Admission.DEFAULT);
+	}
+
+	/**
+	 * A blocking static factory
+	 *
+	 * @param port The port number to use
+	 * @param usingCompression
+	 * @param admission Limits on the connections taken on
+	 * @return A singleton server with respect to port number; an existing server keeps its own limits
+	 */
+	public static synchronized Server getServer(int port, boolean usingCompression, Admission admission) {
+		return getServer(port, usingCompression, admission, 1);
+	}
+
+	/**
+	 * A blocking static factory for a server accepting on several threads at once
+	 * On systems that let sockets share a port, each acceptor listens on a socket of its own and the system spreads
+	 * connections over them; elsewhere the acceptors take turns on one socket
+	 * Every acceptor registers connections with the same server
+	 *
+	 * @param port The port number to use
+	 * @param usingCompression
+	 * @param admission Limits on the connections taken on, shared by every acceptor
+	 * @param acceptors Number of accepting threads
+	 * @return A singleton server with respect to port number; an existing server keeps its own limits and acceptors
+	 */
+	public static synchronized Server getServer(int port, boolean usingCompression, Admission admission, int acceptors) {
+		return getServer(new TcpTransport(port), usingCompression, admission, acceptors);
+	}
+
+	/**
+	 * A blocking static factory listening on any transport, e.g. a Unix domain socket for bots on the same host
+	 *
+	 * @param transport The address to listen on
+	 * @param usingCompression Whether to use compression
+	 * @param admission Limits on the connections taken on
+	 * @param acceptors Number of threads accepting connections
+	 * @return A singleton server with respect to the address; an existing server keeps its own limits and acceptors
+	 */
+	public static synchronized Server getServer(Transport transport, boolean usingCompression, Admission admission, int acceptors) {
 		if(serverList != null) {
-			return serverList.containsKey(port) ? serverList.get(port) : new Server(port, usingCompression);
+			return serverList.containsKey(transport.name()) ? serverList.get(transport.name()) : new Server(transport, usingCompression, null, admission, acceptors);
 		} else {
 			serverList = new HashMap<>();
-			return new Server(port, usingCompression);
+			return new Server(transport, usingCompression, null, admission, acceptors);
 		}
 	}
 
+	/**
+	 * A blocking static factory for a relay
+	 * A relay follows another server as a spectator and feeds everything it receives to its own connections,
+	 * which all watch; their chat and commands are passed upstream
+	 *
+	 * @param port The port number to use
+	 * @param upstreamName Name of the server to relay
+	 * @param upstreamPort Port of the server to relay
+	 * @param usingCompression Applies to both the upstream connection and this server
+	 * @return A singleton server with respect to port number relaying the upstream server
+	 */
+	public static synchronized Server getRelay(int port, String upstreamName, int upstreamPort, boolean usingCompression) {
+		return getRelay(new TcpTransport(port), new TcpTransport(upstreamName, upstreamPort), usingCompression);
+	}
+
+	/**
+	 * A blocking static factory for a relay on any transport, e.g. one listening on TCP for a server on a Unix domain socket
+	 *
+	 * @param transport The address to listen on
+	 * @param upstream The address of the server to relay
+	 * @param usingCompression Applies to both the upstream connection and this server
+	 * @return A singleton server with respect to the address relaying the upstream server
+	 */
+	public static synchronized Server getRelay(Transport transport, Transport upstream, boolean usingCompression) {
+		if(serverList == null)
+			serverList = new HashMap<>();
+		if(serverList.containsKey(transport.name()))
+			return serverList.get(transport.name());
+		return new Server(transport, usingCompression, new Client(upstream, usingCompression), Admission.DEFAULT, 1);
+	}
+
+	/**
+	 * Changes the limits on connections taken on from now on; the backlog stays as the socket was created
+	 *
+	 * @param admission The new limits
+	 */
+	public void setAdmission(Admission admission) {
+		if(admission == null)
+			throw new IllegalArgumentException();
+		this.admission = admission;
+	}
+
+	/**
+	 * @return True if this server relays another rather than running the game itself
+	 */
+	public boolean isRelay() {
+		return upstream != null;
+	}
+
 	/**
 	 * Pauses listening to new connections
 	 */
 	public synchronized void pause() {
-		connectionListener = null;
+		accepting = false;
+		acceptors = null;
 	}
 
 	/**
 	 * Listens for a client to connect
 	 */
 	public synchronized void start() {
-		if(connectionListener == null) {
-			connectionListener = new Thread(this);
-			// Create streams from the client in another thread upon connecting
-			connectionListener.start();
+		if(acceptors == null && !shutDown) {
+			accepting = true;
+			acceptors = new Thread[acceptorCount];
+			for(int j = 0; j < acceptorCount; j++) {
+				Transport.Listener listening = listeners[j % listeners.length];
+				// Create streams from the client in another thread upon connecting
+				acceptors[j] = new Thread(() -> accept(listening), "acceptor-" + name + "-" + j);
+				acceptors[j].start();
+			}
 		}
 	}
 
@@ -118,7 +301,7 @@ public class Server implements Runnable {
 	 * @return An array of identification numbers
 	 */
 	public synchronized Integer[] getId() {
-		return ids.toArray(new Integer[ids.size()]);
+		return ids.toArray(new Integer[0]);
 	}
 
 	//	/**
@@ -130,6 +313,185 @@ public class Server implements Runnable {
 	//		}
 	//	}
 
+	/**
+	 * Sets the listener told about connections and relayed messages
+	 *
+	 * @param listener The listener, or null to remove it
+	 */
+	public void setListener(ServerListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Sends a message to a single connection
+	 *
+	 * @param id The identification number associated with a connection
+	 * @param message The message to send
+	 * @return True if the message was written
+	 */
+	public boolean send(int id, Object message) {
+		ConnectionTask connection = connections.get(id);
+		return connection != null && connection.write(message);
+	}
+
+	/**
+	 * @return The number of connections watching rather than playing
+	 */
+	public int spectatorCount() {
+		int count = 0;
+		for(ConnectionTask connection : connections.values().toArray(new ConnectionTask[0]))
+			if(connection.spectator)
+				count++;
+		return count;
+	}
+
+	/**
+	 * Connections quiet in either direction for the heartbeat interval are sent a heartbeat, which clients answer
+	 * Connections that send nothing for the idle timeout, or whose write blocks that long, are closed
+	 *
+	 * @param heartbeatMillis Time without writing to or hearing from a connection before a heartbeat is sent
+	 * @param idleTimeoutMillis Time waiting on a read, or blocked writing, before a connection is closed; a few heartbeats long
+	 */
+	public void setTimeouts(long heartbeatMillis, long idleTimeoutMillis) {
+		if(heartbeatMillis <= 0 || idleTimeoutMillis <= heartbeatMillis)
+			throw new IllegalArgumentException();
+		heartbeatNanos = TimeUnit.MILLISECONDS.toNanos(heartbeatMillis);
+		idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+
+		// Wake both threads so that they start over with the new period
+		LockSupport.unpark(heartbeat);
+		LockSupport.unpark(reaper);
+	}
+
+	/**
+	 * A client that loses its connection may come back within the window and carry on from the last frame it received
+	 *
+	 * @param resumeWindowMillis Time a lost session is kept for its client
+	 */
+	public void setResumeWindow(long resumeWindowMillis) {
+		if(resumeWindowMillis < 0)
+			throw new IllegalArgumentException();
+		resumeWindowNanos = TimeUnit.MILLISECONDS.toNanos(resumeWindowMillis);
+	}
+
+	/*
+	 * Heartbeats are written on a thread of their own so that a write blocked on a vanished peer never holds up the reaper
+	 * A connection already being written to is skipped rather than waited for, so that one stuck peer does not hold up the rest
+	 * The reaper only reads timestamps and closes sockets; closing the socket of a connection also frees any thread blocked on it
+	 */
+	private void startKeepAlive() {
+		heartbeat = new Thread(() -> {
+			while(!shutDown) {
+				long now = System.nanoTime();
+				for(ConnectionTask connection : connections.values().toArray(new ConnectionTask[0])) {
+					long waiting = connection.waitingSince;
+					boolean quiet = now - connection.lastWrite > heartbeatNanos || waiting != 0 && now - waiting > heartbeatNanos;
+					if(quiet && connection.heartbeat())
+						heartbeats.increment();
+				}
+				LockSupport.parkNanos(heartbeatNanos / 2);
+			}
+		}, "heartbeat-" + name);
+		heartbeat.setDaemon(true);
+		heartbeat.start();
+
+		reaper = new Thread(() -> {
+			while(!shutDown) {
+				LockSupport.parkNanos(heartbeatNanos / 2);
+				long now = System.nanoTime();
+				long timeout = idleTimeoutNanos;
+
+				// Find every dead connection first, then evict them together
+				ArrayList<ConnectionTask> dead = new ArrayList<>();
+				for(ConnectionTask connection : connections.values().toArray(new ConnectionTask[0])) {
+					long waiting = connection.waitingSince;
+					long writing = connection.writingSince;
+					if(writing != 0 && now - writing > timeout) {
+						reapedStuck.increment();
+						dead.add(connection);
+					} else if(waiting != 0 && now - waiting > timeout) {
+						reapedIdle.increment();
+						dead.add(connection);
+					}
+				}
+				for(ConnectionTask connection : dead)
+					connection.abort();
+
+				// Sessions not resumed in time are closed for good
+				long window = resumeWindowNanos;
+				for(Map.Entry<Long, Detached> entry : detached.entrySet()) {
+					if(now - entry.getValue().since > window && detached.remove(entry.getKey(), entry.getValue())) {
+						expired.increment();
+						ServerListener current = listener;
+						if(current != null)
+							current.disconnected(entry.getValue().id);
+					}
+				}
+			}
+		}, "reaper-" + name);
+		reaper.setDaemon(true);
+		reaper.start();
+	}
+
+	/**
+	 * Slow consumers show up with a long last flush
+	 *
+	 * @return One line per connection with its role, bytes and messages in and out, and the time of its last flush
+	 */
+	public String connectionReport() {
+		StringBuilder report = new StringBuilder();
+		for(ConnectionTask connection : connections.values().toArray(new ConnectionTask[0])) {
+			report.append("  ").append(connection.id)
+					.append(connection.spectator ? " spectator" : " player")
+					.append(" in=").append(connection.bytesIn.get()).append("B/").append(connection.messagesIn.get())
+					.append(" out=").append(connection.bytesOut.get()).append("B/").append(connection.messagesOut.get())
+					.append(" lastflush=").append(connection.lastFlushNanos / 1000).append("us\n");
+		}
+		return report.toString();
+	}
+
+	/**
+	 * Stops listening and closes every connection, along with the upstream connection of a relay
+	 * The address is released, e.g. the socket file of a Unix domain socket is removed; the server cannot be started again
+	 */
+	public void shutdown() {
+		Transport.Listener[] closing;
+		synchronized(this) {
+			if(shutDown)
+				return;
+			shutDown = true;
+			accepting = false;
+			acceptors = null;
+			closing = listeners;
+		}
+		synchronized(Server.class) {
+			serverList.remove(name, this);
+		}
+
+		for(Transport.Listener each : closing) {
+			try {
+				each.close();
+			} catch (IOException ioe) {
+				// TODO: Handle
+				System.out.println("Error closing listener on: " + transport);
+			}
+		}
+		for(ConnectionTask connection : connections.values().toArray(new ConnectionTask[0]))
+			connection.end();
+		for(Map.Entry<Long, Detached> entry : detached.entrySet()) {
+			ServerListener current = listener;
+			if(detached.remove(entry.getKey(), entry.getValue()) && current != null)
+				current.disconnected(entry.getValue().id);
+		}
+		if(upstream != null)
+			upstream.close();
+		LockSupport.unpark(heartbeat);
+		LockSupport.unpark(reaper);
+
+		// Its gauges and report hold on to the server
+		Metrics.shared().removeAll("server." + name + ".");
+	}
+
 	/**
 	 * Closes a specific connection by identification number
 	 *
@@ -138,7 +500,7 @@ public class Server implements Runnable {
 	public synchronized void close(int id) {
 		ConnectionTask taskToClose = connections.get(id);
 		if(taskToClose != null)
-			taskToClose.close();
+			taskToClose.end();
 	}
 
 	/**
@@ -151,14 +513,15 @@ public class Server implements Runnable {
 	}
 
 	/*
-	 * Creates a socket listening on the specified port
+	 * Binds the address of the transport
+	 * Several acceptors get a listener each if the address can be shared, so that accepts are not serialized on one socket
 	 */
 	synchronized private void createSocket() {
 		try {
-			serverSocket = new ServerSocket(port);
+			listeners = transport.listen(acceptorCount, admission.backlog());
 		} catch (IOException ioe) {
 			// TODO: Handle
-			System.out.println("Could not listen on port: " + port);
+			System.out.println("Could not listen on: " + transport);
 			System.exit(-1);
 		}
 	}
@@ -166,13 +529,16 @@ public class Server implements Runnable {
 	/*
 	 * This blocks until a connection is made
 	 * Listen for a client to connect
+	 * Not synchronized, so that other acceptors and callers are not held up while waiting
 	 */
-	synchronized private Socket getSocket() {
+	private Transport.Link getSocket(Transport.Listener listening) {
 		try {
-			return serverSocket.accept();
+			return listening.accept();
 		} catch (IOException ioe) {
+			if(shutDown)
+				return null;
 			// TODO: Handle
-			System.out.println("Accept failed on port: " + port);
+			System.out.println("Accept failed on: " + transport);
 			System.exit(-1);
 		}
 		return null;
@@ -180,46 +546,258 @@ public class Server implements Runnable {
 
 	/*
 	 * Returns a unique ID
-	 * Does not put the unique ID in the bank
+	 * Does not put the unique ID in the bank; called holding the lock of the connections
 	 */
-	synchronized private int uniqueID() {
+	private int uniqueID() {
 		// Create a unique ID number
 		Random random = new Random();
 		int unique = random.nextInt(Integer.MAX_VALUE);
-		while(ids.contains(unique)) {
+		while(ids.contains(unique) || isDetached(unique)) {
 			unique = random.nextInt(Integer.MAX_VALUE);
 		}
 		return unique;
 	}
 
+	/*
+	 * Whether an ID is held by a session waiting to be resumed
+	 */
+	private boolean isDetached(int id) {
+		for(Detached session : detached.values())
+			if(session.id == id)
+				return true;
+		return false;
+	}
+
+	/*
+	 * Returns a token for a new session that no client can guess
+	 */
+	private long newToken() {
+		long token = tokens.nextLong();
+		return token == 0 ? 1 : token;
+	}
+
+	/*
+	 * The live connection of a session, if its client reconnects before the old connection is found dead
+	 */
+	private ConnectionTask liveSession(long token) {
+		for(ConnectionTask connection : connections.values().toArray(new ConnectionTask[0]))
+			if(connection.token == token)
+				return connection;
+		return null;
+	}
+
+	/*
+	 * Requests a client can make of the server
+	 */
+	private CommandRegistry createRequests() {
+		CommandRegistry registry = new CommandRegistry();
+
+		// Returns the list of clients connected; returns JayList<>
+		registry.register("getid", command -> {
+			System.out.println("Getting IDs for client: " + command.sender());
+			return new JayList<>(ids.toArray(new Integer[0]));
+		});
+
+		// Close ids; returns null
+		registry.register("kick", command -> {
+			System.out.println("Kicking ID");
+			for(int j = 0; j < command.argCount(); j++) {
+				try {
+					int idToClose = command.intArg(j);
+					ConnectionTask connectionToClose = connections.get(idToClose);
+					if(connectionToClose == null) // Could not find ID in hash map
+						throw new IllegalStateException();
+					connectionToClose.end();
+					System.out.println("Kicked ID: " + idToClose);
+				} catch (NumberFormatException nfe) {
+					// TODO: Handle
+					System.out.println("Close failed. ID could not be read: " + command.arg(j));
+				} catch (IllegalStateException ise) {
+					// TODO: Handle
+					System.out.println("Close failed. ID does not exist: " + command.arg(j));
+				}
+			}
+			return null;
+		});
+
+		// Returns the latest snapshot frame so that a spectator that missed frames can catch up
+		registry.register("snapshot", command -> frames.latestSnapshot());
+
+		// Turns the sender into a spectator, which may talk but not change the game; returns null
+		registry.register("spectate", command -> {
+			ConnectionTask spectator = connections.get(command.sender());
+			if(spectator != null)
+				spectator.spectate();
+			return null;
+		});
+
+		registry.register("pause", command -> {
+			System.out.println("Pausing");
+			pause();
+			System.out.println("Paused");
+			return null;
+		});
+
+		return registry;
+	}
+
 	/**
-	 * Creates streams from the client in another thread upon connecting
+	 * Accepts connections on the first listener on the calling thread
 	 */
 	@Override
 	public void run() {
-		while(connectionListener != null) {
+		accept(listeners[0]);
+	}
+
+	/*
+	 * Creates streams from the client in another thread upon connecting
+	 * Any number of acceptors may run this at once, on one listener or on listeners of their own
+	 */
+	private void accept(Transport.Listener listening) {
+		while(accepting) {
 			/*
-			 * Upon connection, add ID and connectionTask to a HashMap
+			 * Connections beyond the accept rate wait in the backlog of the socket rather than in threads of their own
 			 */
-			int id = uniqueID();
-			ConnectionTask connection = new ConnectionTask(getSocket(), id);
-			ids.add(id); // Put the id in the bank after connecting
-			connections.put(id, connection);
+			throttle();
+			Transport.Link socket = getSocket(listening);
+			if(socket == null)
+				return;
+			accepted.increment();
+
+			/*
+			 * Upon connection, add ID and connectionTask to a HashMap unless the server is full
+			 */
+			ConnectionTask connection = null;
+			synchronized(connections) {
+				if(connections.size() < admission.maxConnections()) {
+					int id = uniqueID();
+					connection = new ConnectionTask(socket, id);
+					ids.add(id); // Put the id in the bank after connecting
+					connections.put(id, connection);
+				}
+			}
+			if(connection == null) {
+				rejectedFull.increment();
+				reject(socket, "Server is full", FULL_RETRY_MILLIS);
+				continue;
+			}
 
 			// Create a bidirectional stream from the accepted connection
 			new Thread(connection).start();
 		}
 	}
 
+	/*
+	 * Takes a token from the accept rate, waiting for one if the burst is used up
+	 * The acceptors share one rate; the token is taken holding the lock so that they do not overdraw it together
+	 */
+	private void throttle() {
+		synchronized(admissionLock) {
+			Admission current = admission;
+			long start = System.nanoTime();
+			long now = start;
+			while(true) {
+				acceptTokens = Math.min(current.burst(), acceptTokens + (now - acceptRefilled) * current.acceptsPerSecond() / 1e9);
+				acceptRefilled = now;
+				if(acceptTokens >= 1)
+					break;
+				LockSupport.parkNanos((long) ((1 - acceptTokens) * 1e9 / current.acceptsPerSecond()));
+				now = System.nanoTime();
+			}
+			acceptTokens--;
+			if(now != start) {
+				throttled.increment();
+				admissionNanos.recordSince(start);
+			}
+		}
+	}
+
+	/*
+	 * Tells a connection why it is turned away and when to come back, then closes it
+	 * Runs on the accepting thread; the reply is small enough to never block on a fresh socket
+	 */
+	private void reject(Transport.Link socket, String reason, long retryAfterMillis) {
+		try {
+			ObjectOutputStream out = StreamUtil.openOutputStream(socket, usingCompression, bytesOut);
+			out.writeObject(new Rejected(reason, retryAfterMillis));
+			out.flush();
+			socket.shutdownOutput();
+
+			// Unread input would reset the connection before the reply is read
+			InputStream in = socket.input();
+			in.skip(in.available());
+		} catch (IOException ioe) {
+			// TODO: Handle
+			System.out.println("Could not reject connection: " + ioe.getMessage());
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException ioe) {
+				// TODO: Handle
+				System.out.println("Error closing socket");
+			}
+		}
+	}
+
+	/*
+	 * Runs a request through the registry; a failed request is answered with the reason rather than dropped
+	 */
+	private Response answer(Request request) {
+		Command command = request.command();
+		try {
+			if(!requests.isRegistered(command.name()))
+				return new Response(request.id(), null, "Unknown request: " + command.name());
+			return new Response(request.id(), requests.dispatch(command), null);
+		} catch (RuntimeException re) {
+			return new Response(request.id(), null, re.toString());
+		}
+	}
+
+	/*
+	 * Chat is sent as a String and commands as a Command; anything else but control messages carries the whole state of the game
+	 */
+	static boolean isState(Object message) {
+		return !(message instanceof String) && !(message instanceof Command)
+				&& !(message instanceof Heartbeat) && !(message instanceof Request) && !(message instanceof Response);
+	}
+
+	/*
+	 * A session whose connection was lost, kept for its client to resume
+	 */
+	private static final class Detached {
+		private final int id;
+		private final boolean spectator;
+		private final long since;
+
+		private Detached(int id, boolean spectator, long since) {
+			this.id = id;
+			this.spectator = spectator;
+			this.since = since;
+		}
+	}
+
 	/*
 	 * Reads from the input of its dedicated stream and sends the collected input to relevant connections
 	 */
 	private class ConnectionTask implements Runnable {
 
 		private volatile int id;
-		private Socket socket;
-		private ObjectOutputStream outputStream;
+		private volatile long token; // 0 until the client has said hello
+		private volatile boolean spectator;
+		private volatile boolean resumable = true; // False once kicked or taken over by a resumed connection
+		private volatile Thread feeder;
+		private final Counter bytesIn = new Counter(Server.this.bytesIn);
+		private final Counter bytesOut = new Counter(Server.this.bytesOut);
+		private final Counter messagesIn = new Counter(Server.this.messagesIn);
+		private final Counter messagesOut = new Counter(Server.this.messagesOut);
+		private volatile long lastFlushNanos;
+		private volatile long waitingSince = System.nanoTime(); // 0 while a message read is being handled
+		private volatile long lastWrite = System.nanoTime();
+		private volatile long writingSince; // 0 unless a write is in progress
+		private volatile Transport.Link socket;
+		private ObjectOutputStream outputStream; // Written holding the write lock
 		private ObjectInputStream inputStream;
+		private final ReentrantLock writeLock = new ReentrantLock(); // Writes from different threads do not interleave
 
 		/*
 		 * Prevent default constructor call
@@ -232,7 +810,7 @@ public class Server implements Runnable {
 		 * @param socket The socket which this object will listen to
 		 * @param id The identification number associated with the socket
 		 */
-		private ConnectionTask(Socket socket, Integer id) {
+		private ConnectionTask(Transport.Link socket, Integer id) {
 			this.socket = socket;
 			this.id = id;
 		}
@@ -243,21 +821,31 @@ public class Server implements Runnable {
 		 * @param id Identification number of a connection to close
 		 */
 		private synchronized void close() {
+			// Stop feeding frames
+			Thread currentFeeder = feeder;
+			if(currentFeeder != null && currentFeeder != Thread.currentThread())
+				currentFeeder.interrupt();
+
 			// Close ObjectOutputStream
-			if(outputStream != null) {
-				try {
-					outputStream.flush();
-				} catch (IOException ioe) {
-					// TODO: Handle
-					System.out.println("Possible loss of data while closing");
-				}
-				try {
-					outputStream.close();
-					outputStream = null;
-				} catch (IOException ioe2) {
-					// TODO: Handle
-					System.out.println("Error closing output stream");
+			writeLock.lock();
+			try {
+				if(outputStream != null) {
+					try {
+						outputStream.flush();
+					} catch (IOException ioe) {
+						// TODO: Handle
+						System.out.println("Possible loss of data while closing");
+					}
+					try {
+						outputStream.close();
+						outputStream = null;
+					} catch (IOException ioe2) {
+						// TODO: Handle
+						System.out.println("Error closing output stream");
+					}
 				}
+			} finally {
+				writeLock.unlock();
 			}
 
 			// Close ObjectInputStream
@@ -282,85 +870,224 @@ public class Server implements Runnable {
 				}
 			}
 
-			// Remove the references from the collection
-			try {
-				Server.this.connections.remove(id);
-				Server.this.ids.remove(Server.this.ids.indexOf(id));
-			} catch (ArrayIndexOutOfBoundsException aiobe) {
-				// Do nothing
+			// Remove the references from the collection, unless a resumed connection has taken the id over
+			// The session outlives its connection for a while in case the client comes back;
+			// it is kept under the same lock so that a client resuming meanwhile finds it either live or detached
+			boolean removed;
+			boolean kept = false;
+			synchronized(Server.this.connections) {
+				removed = Server.this.connections.remove(id, this);
+				if(removed) {
+					Server.this.ids.remove(Integer.valueOf(id));
+					if(resumable && token != 0) {
+						detached.put(token, new Detached(id, spectator, System.nanoTime()));
+						kept = true;
+					}
+				}
 			}
+			ServerListener current = listener;
+			if(removed && resumable && !kept && current != null)
+				current.disconnected(id);
 
 			// TODO: Handle
 			System.out.println("Closed connection to: " + id);
 		}
 
 		/*
-		 * Return null if no messages are to be read
-		 * Else return a JayList containing the requested information
-		 * And/or modify this field so that whatever this particular client sends only goes to those specified
+		 * Picks up the session named by a hello if it is still kept, else starts a new one
+		 * Returns the sequence to feed from, -1 for the latest snapshot, or NEW_SESSION
 		 */
-		@SuppressWarnings("rawtypes")
-		private JayList parseRequest(Object rebound) {
-			if(!(rebound instanceof JayList))
-				return null;
+		private long resume(Hello hello) {
+			if(hello.token() != 0) {
+				Detached previous;
+				ConnectionTask live;
+				synchronized(Server.this.connections) {
+					previous = detached.remove(hello.token());
+					live = previous == null ? liveSession(hello.token()) : null;
+					if(live != null) // The old connection has not been found dead yet; it must not be kept once it is
+						live.resumable = false;
+				}
+				if(previous != null || live != null) {
+					if(live != null)
+						live.abort();
+					rekey(previous != null ? previous.id : live.id);
+					spectator = previous != null ? previous.spectator : live.spectator;
+					token = hello.token();
+					resumed.increment();
+					return hello.lastSequence() < 0 ? -1 : hello.lastSequence() + 1;
+				}
+			}
+			token = newToken();
+			return NEW_SESSION;
+		}
 
-			String request = "";
+		/*
+		 * Closes the connection and its session so that it cannot be resumed
+		 */
+		private void end() {
+			boolean wasResumable = resumable;
+			resumable = false;
+			close();
+			ServerListener current = listener;
+			if(wasResumable && current != null)
+				current.disconnected(id);
+		}
 
-			JayList list = (JayList) rebound;
-			if(!list.isEmpty()) {
-				Object readFirst = list.getFirst();
-				if(readFirst instanceof String) {
-					request = (String) readFirst;
-				} else {
-					return null;
+		/*
+		 * Moves the connection to the ID of the session it resumes
+		 */
+		private void rekey(int resumedId) {
+			synchronized(Server.this.connections) {
+				if(Server.this.connections.remove(id, this))
+					Server.this.ids.remove(Integer.valueOf(id));
+				id = resumedId;
+				if(Server.this.connections.put(id, this) == null) // Else the id is still held by the connection taken over
+					Server.this.ids.add(id);
+			}
+		}
+
+		/*
+		 * Closes the socket without waiting for a thread that may be blocked writing to it
+		 * The blocked read or write then fails and its thread closes the connection
+		 */
+		private void abort() {
+			Transport.Link current = socket;
+			if(current == null)
+				return;
+			try {
+				current.close();
+			} catch (IOException ioe) {
+				// TODO: Handle
+				System.out.println("Error aborting connection: " + id);
+			}
+		}
+
+		/**
+		 * Writes and flushes one message; writes from different threads do not interleave
+		 * The connection is closed if the write fails
+		 *
+		 * @param message The message to write
+		 * @return True if the message was written
+		 */
+		private boolean write(Object message) {
+			writeLock.lock();
+			return writeAndUnlock(message);
+		}
+
+		/*
+		 * Writes a heartbeat unless another write is in progress
+		 * A connection being written to is not quiet, and a write stuck on a vanished peer is left to the reaper
+		 */
+		private boolean heartbeat() {
+			return writeLock.tryLock() && writeAndUnlock(Heartbeat.INSTANCE);
+		}
+
+		/*
+		 * Writes and flushes one message holding the write lock, which is released before a failed connection is closed
+		 */
+		private boolean writeAndUnlock(Object message) {
+			try {
+				try {
+					if(outputStream == null)
+						return false;
+					long start = System.nanoTime();
+					writingSince = start;
+					outputStream.writeObject(message);
+					outputStream.flush();
+					messagesOut.increment();
+					flushed(start);
+				} finally {
+					writeLock.unlock();
 				}
+				return true;
+			} catch (IOException ioe) {
+				// TODO: Handle
+				System.out.println("Error writing to: " + id);
+				close();
+				return false;
 			}
+		}
 
-			/*
-			 * Check what commands are to be run
-			 */
-			if(request.equals("getid")) { // Returns the list of clients connected; returns JayList<>
-				System.out.println("Getting IDs for client: " + id);
-				return new JayList<>(ids.toArray(new Integer[ids.size()]));
-
-			} else if(request.equals("selected")) { // Talk to only those selected; returns null
-				// Parse the rest of the Strings in the list into integers signifying IDs
-
-			} else if(request.equals("everyone")) { // Talk to everyone; returns null
-				// Set the field so objects read from this client is sent to everyone
-
-			} else if(request.equals("kick")) { // Close id; returns null
-				System.out.println("Kicking ID");
-				list.removeFirst(); // Remove the message
-				while(!list.isEmpty()) {
-					Object readValue = list.removeFirst();
-					if(readValue instanceof String) { // Should be String unless type is a String superclass
-						try {
-							int idToClose = Integer.parseInt((String) readValue);
-							ConnectionTask connectionToClose = connections.get(idToClose);
-							if(connectionToClose == null) // Could not find ID in hash map
-								throw new IllegalArgumentException();
-							connectionToClose.close();
-							System.out.println("Kicked ID: " + idToClose);
-						} catch (NumberFormatException nfe) {
-							// TODO: Handle
-							System.out.println("Close failed. ID could not be read: " + (String) readValue);
-						} catch (IllegalArgumentException iae) {
-							// TODO: Handle
-							System.out.println("Close failed. ID does not exist: " + (String) readValue);
+		/*
+		 * Records the time taken to write and flush a message or a batch of frames
+		 */
+		private void flushed(long start) {
+			long now = System.nanoTime();
+			writingSince = 0;
+			lastWrite = now;
+			flushNanos.record(now - start);
+			lastFlushNanos = now - start;
+		}
+
+		/**
+		 * Lets the connection watch and talk but no longer change the game
+		 */
+		private void spectate() {
+			spectator = true;
+		}
+
+		/*
+		 * Starts following the frame ring from a sequence
+		 */
+		private synchronized void startFeed(long from) {
+			if(feeder != null || outputStream == null)
+				return;
+			feeder = new Thread(() -> feed(from), "feed-" + id);
+			feeder.setDaemon(true);
+			feeder.start();
+		}
+
+		/*
+		 * Writes frames in order from a cursor into the ring
+		 * Whatever has been published since the last batch is written with a single flush
+		 * A connection more than half a ring behind, or resuming from a frame no longer kept, skips to the latest snapshot
+		 * instead of working through the backlog
+		 */
+		private void feed(long from) {
+			long cursor = from;
+			try {
+				while(true) {
+					frames.await(cursor);
+					long next = frames.next();
+					writeLock.lock();
+					try {
+						if(outputStream == null)
+							return;
+						long start = System.nanoTime();
+						writingSince = start;
+
+						if(next - cursor > frames.capacity() / 2 || frames.get(cursor) == null) {
+							Frame snapshot = frames.latestSnapshot();
+							long oldest = Math.max(cursor + 1, next - frames.capacity() / 2);
+							if(snapshot != null && snapshot.sequence() >= cursor) {
+								outputStream.writeObject(snapshot);
+								messagesOut.increment();
+								oldest = Math.max(oldest, snapshot.sequence() + 1);
+							}
+							cursor = oldest;
+						}
+
+						for(; cursor < next; cursor++) {
+							Frame frame = frames.get(cursor);
+							if(frame == null) // Overwritten while writing; skip ahead on the next batch
+								break;
+							outputStream.writeObject(frame);
+							messagesOut.increment();
 						}
+						outputStream.flush();
+						outputStream.reset(); // Frames are not written twice; do not keep handles to them
+						flushed(start);
+					} finally {
+						writeLock.unlock();
 					}
 				}
-
-			} else if(request.equals("pause")) {
-				System.out.println("Pausing");
-				pause();
-				System.out.println("Paused");
-
+			} catch (InterruptedException ie) {
+				// Closed
+			} catch (IOException ioe) {
+				// TODO: Handle
+				System.out.println("Error feeding connection: " + id);
+				close();
 			}
-
-			// Handle message validity check from client side
-			return null;
 		}
 
 		/**
@@ -370,29 +1097,53 @@ public class Server implements Runnable {
 		 */
 		@Override
 		public void run() {
-			/*
-			 * Create output stream
-			 */
-			outputStream = Server.this.usingCompression ? StreamUtil.createOutputZipStream(socket) :
-				StreamUtil.createOutputStream(socket);
-
-			/*
-			 * Give client its ID
-			 */
 			try {
-				outputStream.writeObject(new Integer(id));
-				outputStream.flush();
-			} catch (IOException ioe) {
+				/*
+				 * Create output stream
+				 */
+				outputStream = StreamUtil.openOutputStream(socket, Server.this.usingCompression, bytesOut);
+
+				/*
+				 * Create input stream
+				 * A peer that never sends its stream header or its hello is reaped as idle
+				 */
+				inputStream = StreamUtil.openInputStream(socket, Server.this.usingCompression, bytesIn);
+				Object hello = inputStream.readObject();
+				if(!(hello instanceof Hello))
+					throw new IOException("Expected a hello");
+				long from = resume((Hello) hello);
+
+				// Fixed before the client is told it is connected so that nothing published from then on is skipped;
+				// anything but a resumed sequence starts at the latest snapshot
+				Frame first = frames.latestSnapshot();
+				long cursor = from >= 0 ? from : first == null ? frames.next() : first.sequence();
+
+				/*
+				 * Give client its ID and the token of its session
+				 */
+				if(!write(new Session(id, token, from != NEW_SESSION))) {
+					// TODO: Handle
+					System.out.println("Unable to give client id: " + id);
+					return;
+				}
+
+				ServerListener connectListener = listener;
+				if(from == NEW_SESSION && connectListener != null)
+					connectListener.connected(id);
+
+				// Everyone connected to a relay watches
+				if(upstream != null)
+					spectate();
+
+				// Every connection follows the frame ring; a resumed one carries on after the last frame it received
+				startFeed(cursor);
+			} catch (IOException | ClassNotFoundException e) {
 				// TODO: Handle
-				System.out.println("Unable to give client id: " + id);
+				System.out.println("Could not open streams to: " + id);
+				close();
+				return;
 			}
 
-			/*
-			 * Create input stream
-			 */
-			inputStream = Server.this.usingCompression ? StreamUtil.createInputZipStream(socket) :
-				StreamUtil.createInputStream(socket);
-
 			/*
 			 * Read streams until the particular connection is closed off
 			 * Prevent memory leak by closing off streams from severed connections
@@ -402,17 +1153,57 @@ public class Server implements Runnable {
 					/*
 					 * Parse rebound and send its information only to relevant connections
 					 */
+					waitingSince = System.nanoTime();
 					Object rebound = inputStream.readObject();
+					waitingSince = 0;
+					messagesIn.increment();
+					if(rebound instanceof Heartbeat)
+						continue;
+
+					/*
+					 * Requests are answered to the sender alone, whatever the role of the connection
+					 */
+					if(rebound instanceof Request) {
+						write(answer((Request) rebound));
+						continue;
+					}
 					boolean confidential = false;
 
 					/*
-					 * Send to a parser to find out if the client is asking for anything
+					 * A traced message is handled as the message it carries and relayed in its envelope
 					 */
-					@SuppressWarnings("rawtypes")
-					JayList serverResponse = parseRequest(rebound);
-					if(serverResponse != null) { // If non-null, then it was a request to the server
-						outputStream.writeObject(serverResponse);
-						outputStream.flush();
+					Traced traced = null;
+					if(rebound instanceof Traced) {
+						traced = (Traced) rebound;
+						rebound = traced.message();
+						if(Trace.ENABLED)
+							Trace.stamp(traced, Trace.SERVER_READ);
+					}
+					Object relayed = traced == null ? rebound : traced;
+
+					/*
+					 * Commands registered with the server are requests to it and are not relayed
+					 */
+					if(rebound instanceof Command && requests.isRegistered(((Command) rebound).name())) {
+						Object serverResponse = requests.dispatch((Command) rebound);
+						if(serverResponse != null)
+							write(serverResponse);
+						confidential = true;
+					}
+
+					/*
+					 * Spectators may talk and make requests but cannot change the game
+					 */
+					if(!confidential && spectator && isState(rebound))
+						confidential = true;
+
+					/*
+					 * A relay passes everything else upstream; it comes back down as a frame
+					 * Commands keep the id of their sender so that the client knows its own when they come back;
+					 * ids are drawn at random from the whole positive range, so one matching a connection of another server is improbable
+					 */
+					if(!confidential && upstream != null) {
+						upstream.send(relayed);
 						confidential = true;
 					}
 
@@ -420,17 +1211,18 @@ public class Server implements Runnable {
 					 * Send rebound to each client if the message was not for the server
 					 */
 					if(!confidential) {
-						for(int j = 0; j < Server.this.ids.size(); j++) {
-							ConnectionTask current = Server.this.connections.get(Server.this.ids.get(j));
-							/*
-							 * Watch for null in case the hash map or id bank gets corrupted
-							 * This will cut off every connection there is in every thread
-							 */
-							if(current != null) {
-								current.outputStream.writeObject(rebound);
-								current.outputStream.flush();
-							}
-						}
+						long start = System.nanoTime();
+						ServerListener current = listener;
+						if(current != null)
+							current.received(id, rebound);
+						if(Trace.ENABLED && traced != null)
+							Trace.stamp(traced, Trace.SERVER_WRITE);
+
+						// Encoded once however many connections there are; each is written in order by its own feed
+						frames.publish(relayed, isState(rebound));
+						fanOutNanos.recordSince(start);
+						if(Trace.ENABLED && traced != null)
+							Trace.record(traced, Trace.FANNED_OUT);
 					}
 				}
 			} catch (IOException ioe) {
@@ -0,0 +1,56 @@
+package com.jaewanyun.omoc.net;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Jaewan Yun <jay50@pitt.edu>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+/**
+ * Receives the lifecycle of connections and the messages relayed by a server
+ * Callbacks run on the thread of the connection they concern and must not block for long
+ *
+ * @author Jaewan Yun <jay50@pitt.edu>
+ */
+public interface ServerListener {
+
+	/**
+	 * Called once a new session has been given its identification number; not called when a session is resumed
+	 *
+	 * @param id Identification number of the connection
+	 */
+	void connected(int id);
+
+	/**
+	 * Called for every message relayed to the other connections
+	 *
+	 * @param id Identification number of the sending connection
+	 * @param message The message
+	 */
+	void received(int id, Object message);
+
+	/**
+	 * Called once when a session ends: it is closed by the server, or its connection was lost and not resumed in time
+	 *
+	 * @param id Identification number of the connection
+	 */
+	void disconnected(int id);
+}
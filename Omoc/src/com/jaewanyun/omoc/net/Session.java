@@ -0,0 +1,63 @@
+package com.jaewanyun.omoc.net;
+import java.io.Serializable;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Jaewan Yun <jay50@pitt.edu>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+/**
+ * The answer of the server to a hello: the identification number of the connection and the token that resumes it
+ * The token is only ever sent to its own client; the identification number is shared with everyone
+ *
+ * @author Jaewan Yun <jay50@pitt.edu>
+ */
+final class Session implements Serializable {
+
+	private static final long serialVersionUID = 6120583377419042L;
+	private final int id;
+	private final long token;
+	private final boolean resumed;
+
+	/**
+	 * @param id Identification number of the connection
+	 * @param token Token to present when reconnecting
+	 * @param resumed True if the session named by the hello was picked up where it was left
+	 */
+	Session(int id, long token, boolean resumed) {
+		this.id = id;
+		this.token = token;
+		this.resumed = resumed;
+	}
+
+	int id() {
+		return id;
+	}
+
+	long token() {
+		return token;
+	}
+
+	boolean resumed() {
+		return resumed;
+	}
+}
@@ -2,8 +2,10 @@ package com.jaewanyun.omoc.net;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.net.Socket;
 
 /*
@@ -118,4 +120,30 @@ public final class StreamUtil {
 		}
 		return null;
 	}
+
+	/*
+	 * Create output stream from connection, compressed or not, counting the bytes written to the link
+	 * Unlike the factories above, a failure is left to the caller, e.g. a server that must outlive one bad connection
+	 */
+	static ObjectOutputStream openOutputStream(Transport.Link link, boolean compressed, Counter written) throws IOException {
+		if(LoopbackTransport.isLoopback(link))
+			return LoopbackTransport.openOutputStream(link); // Nothing is encoded, so nothing is compressed or counted
+		OutputStream out = MeteredStreams.output(link.output(), written);
+		return new ObjectOutputStream(
+				new BufferedOutputStream(
+						compressed ? new CompressedBlockOutputStream(out, 1024) : out));
+	}
+
+	/*
+	 * Create input stream from connection, compressed or not, counting the bytes read from the link
+	 * Blocks until the other end has created its output stream
+	 */
+	static ObjectInputStream openInputStream(Transport.Link link, boolean compressed, Counter read) throws IOException {
+		if(LoopbackTransport.isLoopback(link))
+			return LoopbackTransport.openInputStream(link);
+		InputStream in = MeteredStreams.input(link.input(), read);
+		return new ObjectInputStream(
+				new BufferedInputStream(
+						compressed ? new CompressedBlockInputStream(in) : in));
+	}
 }
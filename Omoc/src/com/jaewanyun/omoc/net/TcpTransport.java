@@ -0,0 +1,154 @@
+package com.jaewanyun.omoc.net;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.StandardSocketOptions;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Jaewan Yun <jay50@pitt.edu>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+/**
+ * Connections over TCP
+ * Listeners share the port with SO_REUSEPORT where the system supports it
+ *
+ * @author Jaewan Yun <jay50@pitt.edu>
+ */
+public final class TcpTransport implements Transport {
+
+	private final String host;
+	private final int port;
+
+	/**
+	 * A transport for a server, listening on every interface
+	 *
+	 * @param port The port number to use
+	 */
+	public TcpTransport(int port) {
+		this(null, port);
+	}
+
+	/**
+	 * @param host Name of the server to connect to, or null to only listen
+	 * @param port The port number to use
+	 */
+	public TcpTransport(String host, int port) {
+		this.host = host;
+		this.port = port;
+	}
+
+	@Override
+	public Link connect() throws IOException {
+		if(host == null)
+			throw new IOException("No host to connect to on port: " + port);
+		return new SocketLink(new Socket(host, port));
+	}
+
+	@Override
+	public Listener[] listen(int count, int backlog) throws IOException {
+		ServerSocket first = new ServerSocket();
+		boolean sharePort = count > 1 && first.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+		ServerSocket[] sockets = new ServerSocket[sharePort ? count : 1];
+		sockets[0] = first;
+		Listener[] listeners = new Listener[sockets.length];
+		try {
+			for(int j = 0; j < sockets.length; j++) {
+				if(sockets[j] == null)
+					sockets[j] = new ServerSocket();
+				if(sharePort)
+					sockets[j].setOption(StandardSocketOptions.SO_REUSEPORT, true);
+				sockets[j].bind(new InetSocketAddress(port), backlog);
+				ServerSocket listening = sockets[j];
+				listeners[j] = new Listener() {
+					@Override
+					public Link accept() throws IOException {
+						return new SocketLink(listening.accept());
+					}
+
+					@Override
+					public void close() throws IOException {
+						listening.close();
+					}
+				};
+			}
+		} catch (IOException ioe) {
+			for(ServerSocket socket : sockets)
+				if(socket != null)
+					socket.close();
+			throw ioe;
+		}
+		return listeners;
+	}
+
+	/**
+	 * @return The port number, so that the metrics of a TCP server are named by its port
+	 */
+	@Override
+	public String name() {
+		return Integer.toString(port);
+	}
+
+	@Override
+	public String toString() {
+		return (host == null ? "*" : host) + ":" + port;
+	}
+
+	/*
+	 * A connected socket
+	 */
+	private static final class SocketLink implements Link {
+		private final Socket socket;
+
+		private SocketLink(Socket socket) {
+			this.socket = socket;
+		}
+
+		@Override
+		public InputStream input() throws IOException {
+			return socket.getInputStream();
+		}
+
+		@Override
+		public OutputStream output() throws IOException {
+			return socket.getOutputStream();
+		}
+
+		@Override
+		public void setReadTimeout(int millis) throws IOException {
+			socket.setSoTimeout(millis);
+		}
+
+		@Override
+		public void shutdownOutput() throws IOException {
+			socket.shutdownOutput();
+		}
+
+		@Override
+		public void close() throws IOException {
+			socket.close();
+		}
+	}
+}
@@ -0,0 +1,232 @@
+package com.jaewanyun.omoc.net;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Jaewan Yun <jay50@pitt.edu>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+/**
+ * Optional tracing of messages from MainFrame.send to the receiver's screen
+ * Enabled with -Domoc.trace=true; when disabled every hook is behind a constant false branch and compiles away
+ *
+ * A traced message is wrapped in a Traced envelope that carries its stamps between processes
+ * Each thread records (id, stage, time) into a ring of its own without allocating or locking
+ * Stamps come from System.nanoTime(), so times taken in different processes only line up on the same host
+ *
+ * @author Jaewan Yun <jay50@pitt.edu>
+ */
+public final class Trace {
+
+	public static final boolean ENABLED = Boolean.getBoolean("omoc.trace");
+
+	public static final int SEND = 0; // Queued by MainFrame.send
+	public static final int DEQUEUE = 1; // Taken from the queue by the client writer thread
+	public static final int WRITTEN = 2; // Serialized and flushed by the client
+	public static final int SERVER_READ = 3; // Deserialized by the server
+	public static final int SERVER_WRITE = 4; // Fan-out started
+	public static final int FANNED_OUT = 5; // Published for every connection
+	public static final int RECEIVED = 6; // Deserialized by the receiving client
+	public static final int RENDERED = 7; // Drawn on the EDT
+	static final int STAGES = 8;
+	private static final String[] NAMES = {"send", "dequeue", "written", "server read", "server write", "fanned out", "received", "rendered"};
+
+	private static final int RING_RECORDS = 1 << 14;
+	private static final int MAX_RINGS = 64; // Threads tracing at once beyond this many record nothing of their own
+	private static final CopyOnWriteArrayList<Ring> rings = new CopyOnWriteArrayList<>();
+	private static final ThreadLocal<Ring> ring = new ThreadLocal<>();
+	private static final long process = (long) new Random().nextInt() << 32; // Keeps ids of different processes apart
+	private static final AtomicLong sequence = new AtomicLong();
+
+	static {
+		if(ENABLED)
+			Metrics.shared().report("trace", Trace::dump);
+	}
+
+	private Trace() {throw new UnsupportedOperationException();}
+
+	/**
+	 * Wraps a message and stamps it as sent
+	 *
+	 * @param message The message
+	 * @return The message in a Traced envelope
+	 */
+	public static Traced start(Object message) {
+		Traced traced = new Traced(process | (sequence.incrementAndGet() & 0xFFFFFFFFL), message);
+		stamp(traced, SEND);
+		return traced;
+	}
+
+	/**
+	 * Stamps a stage in the envelope, so that it travels on with the message, and records it on this thread
+	 *
+	 * @param traced The envelope
+	 * @param stage The stage passed
+	 */
+	public static void stamp(Traced traced, int stage) {
+		long now = System.nanoTime();
+		traced.stamps[stage] = now;
+		Ring current = ring();
+		if(current != null)
+			current.record(traced.id(), stage, now);
+	}
+
+	/**
+	 * Records a stage on this thread only, e.g. after the envelope has been written
+	 *
+	 * @param traced The envelope
+	 * @param stage The stage passed
+	 */
+	public static void record(Traced traced, int stage) {
+		Ring current = ring();
+		if(current != null)
+			current.record(traced.id(), stage, System.nanoTime());
+	}
+
+	/**
+	 * Records the stages stamped in other processes along with the arrival itself
+	 *
+	 * @param traced The envelope as it arrived
+	 * @param stage The stage of arrival
+	 */
+	public static void arrive(Traced traced, int stage) {
+		Ring current = ring();
+		if(current != null) {
+			for(int s = 0; s < stage; s++)
+				if(traced.stamps[s] != 0)
+					current.record(traced.id(), s, traced.stamps[s]);
+		}
+		stamp(traced, stage);
+	}
+
+	/**
+	 * Joins the records of every thread by message and times each step between consecutive stages
+	 * Records overwritten in a ring leave gaps; the dump does not stop the threads, so a record written meanwhile may be torn
+	 *
+	 * @return One line per step with the number of messages and latency percentiles in microseconds
+	 */
+	public static String dump() {
+		HashMap<Long, long[]> messages = new HashMap<>();
+		for(Ring each : rings)
+			each.collect(messages);
+
+		Histogram[][] steps = new Histogram[STAGES][STAGES];
+		for(long[] stamps : messages.values()) {
+			int previous = -1;
+			for(int s = 0; s < STAGES; s++) {
+				if(stamps[s] == 0)
+					continue;
+				if(previous >= 0) {
+					if(steps[previous][s] == null)
+						steps[previous][s] = new Histogram();
+					steps[previous][s].record(stamps[s] - stamps[previous]);
+				}
+				previous = s;
+			}
+		}
+
+		StringBuilder builder = new StringBuilder();
+		builder.append("  ").append(messages.size()).append(" messages traced\n");
+		for(int from = 0; from < STAGES; from++) {
+			for(int to = 0; to < STAGES; to++) {
+				Histogram step = steps[from][to];
+				if(step != null) {
+					builder.append("  ").append(NAMES[from]).append(" -> ").append(NAMES[to])
+							.append(" count=").append(step.count())
+							.append(" p50=").append(step.percentile(50) / 1000)
+							.append(" p99=").append(step.percentile(99) / 1000)
+							.append(" max=").append(step.max() / 1000).append(" us\n");
+				}
+			}
+		}
+		return builder.toString();
+	}
+
+	/*
+	 * The ring of the calling thread, claimed on its first record
+	 */
+	private static Ring ring() {
+		Ring current = ring.get();
+		if(current == null) {
+			current = claim();
+			if(current != null)
+				ring.set(current);
+		}
+		return current;
+	}
+
+	/*
+	 * Takes over the ring of a thread that has ended, e.g. of a closed connection, rather than make one per thread
+	 * Makes a new ring while there are fewer than the most allowed; returns null if every ring belongs to a live thread
+	 */
+	private static synchronized Ring claim() {
+		Thread thread = Thread.currentThread();
+		for(Ring each : rings) {
+			if(!each.owner.isAlive()) {
+				each.owner = thread;
+				return each;
+			}
+		}
+		if(rings.size() >= MAX_RINGS)
+			return null;
+		Ring created = new Ring(thread);
+		rings.add(created);
+		return created;
+	}
+
+	/*
+	 * Records of one thread at a time; only that thread writes, so the position needs no atomics
+	 * A ring taken over keeps the records of the thread before, which dumps still read
+	 */
+	private static final class Ring {
+
+		private final long[] ids = new long[RING_RECORDS];
+		private final long[] times = new long[RING_RECORDS];
+		private final byte[] stages = new byte[RING_RECORDS];
+		private volatile int position;
+		private volatile Thread owner;
+
+		private Ring(Thread owner) {
+			this.owner = owner;
+		}
+
+		private void record(long id, int stage, long time) {
+			int index = position & (RING_RECORDS - 1);
+			ids[index] = id;
+			stages[index] = (byte) stage;
+			times[index] = time;
+			position++; // Volatile write publishes the record to a dump
+		}
+
+		private void collect(Map<Long, long[]> messages) {
+			int end = position;
+			for(int j = Math.max(0, end - RING_RECORDS); j < end; j++) {
+				int index = j & (RING_RECORDS - 1);
+				messages.computeIfAbsent(ids[index], id -> new long[STAGES])[stages[index]] = times[index];
+			}
+		}
+	}
+}
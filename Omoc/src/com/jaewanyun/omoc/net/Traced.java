@@ -0,0 +1,54 @@
+package com.jaewanyun.omoc.net;
+import java.io.Serializable;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Jaewan Yun <jay50@pitt.edu>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+/**
+ * A message on its way through the message path with the times it passed each stage so far
+ * Only sent while tracing; a peer that does not trace unwraps it and ignores the stamps
+ *
+ * @author Jaewan Yun <jay50@pitt.edu>
+ */
+public final class Traced implements Serializable {
+
+	private static final long serialVersionUID = 6503817264019283L;
+	private final long id;
+	private final Object message;
+	final long[] stamps; // System.nanoTime() at each stage passed, or 0
+
+	Traced(long id, Object message) {
+		this.id = id;
+		this.message = message;
+		this.stamps = new long[Trace.STAGES];
+	}
+
+	public long id() {
+		return id;
+	}
+
+	public Object message() {
+		return message;
+	}
+}
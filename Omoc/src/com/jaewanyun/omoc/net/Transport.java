@@ -0,0 +1,96 @@
+package com.jaewanyun.omoc.net;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Jaewan Yun <jay50@pitt.edu>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+/**
+ * How a client reaches a server: over TCP, or over a Unix domain socket for processes on the same host
+ * Everything above the byte streams, from the handshake to the frames, is the same whichever transport carries it
+ *
+ * @author Jaewan Yun <jay50@pitt.edu>
+ */
+public interface Transport {
+
+	/**
+	 * One open connection
+	 * Reading and writing may happen on different threads at once; closing from any thread fails a blocked read or write
+	 */
+	interface Link extends Closeable {
+		InputStream input() throws IOException;
+
+		OutputStream output() throws IOException;
+
+		/**
+		 * @param millis Longest a read may block before failing, or 0 to block for as long as it takes
+		 * @throws IOException When the timeout cannot be set
+		 */
+		void setReadTimeout(int millis) throws IOException;
+
+		/**
+		 * Tells the other end that nothing more will be written
+		 *
+		 * @throws IOException When the connection is already closed
+		 */
+		void shutdownOutput() throws IOException;
+	}
+
+	/**
+	 * A bound address taking connections
+	 */
+	interface Listener extends Closeable {
+		/**
+		 * Blocks until a connection is made
+		 *
+		 * @return The connection
+		 * @throws IOException When the listener is closed or fails
+		 */
+		Link accept() throws IOException;
+	}
+
+	/**
+	 * @return Connection to a server listening on this transport
+	 * @throws IOException When the server cannot be reached
+	 */
+	Link connect() throws IOException;
+
+	/**
+	 * Binds the address of this transport
+	 * Several listeners share the address if the system spreads connections over them, else there is one for everyone
+	 *
+	 * @param count Listeners wanted, one per accepting thread
+	 * @param backlog Connections held while they wait to be accepted
+	 * @return At least one listener and at most count
+	 * @throws IOException When the address cannot be bound
+	 */
+	Listener[] listen(int count, int backlog) throws IOException;
+
+	/**
+	 * @return A name unique to the address, used for the names of servers, metrics and threads
+	 */
+	String name();
+}
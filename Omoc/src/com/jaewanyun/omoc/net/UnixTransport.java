@@ -0,0 +1,240 @@
+package com.jaewanyun.omoc.net;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Jaewan Yun <jay50@pitt.edu>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+/**
+ * Connections over a Unix domain socket, for bots and relays on the same host as the server
+ * The bytes never pass through the TCP stack
+ * A socket file left by a server that did not close is replaced on binding, but never a live socket or any other file;
+ * the file is removed when the listener closes
+ *
+ * @author Jaewan Yun <jay50@pitt.edu>
+ */
+public final class UnixTransport implements Transport {
+
+	private final Path path;
+	private static ScheduledExecutorService timeouts; // Closes channels whose read outlasts its timeout; made when first needed
+
+	/**
+	 * @param path The socket file
+	 */
+	public UnixTransport(Path path) {
+		if(path == null)
+			throw new IllegalArgumentException();
+		this.path = path;
+	}
+
+	@Override
+	public Link connect() throws IOException {
+		return new ChannelLink(SocketChannel.open(UnixDomainSocketAddress.of(path)));
+	}
+
+	/**
+	 * A socket file is bound once, so every acceptor shares one listener
+	 */
+	@Override
+	public Listener[] listen(int count, int backlog) throws IOException {
+		removeStale();
+		ServerSocketChannel channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+		try {
+			channel.bind(UnixDomainSocketAddress.of(path), backlog);
+		} catch (IOException ioe) {
+			channel.close();
+			throw ioe;
+		}
+		return new Listener[] {new Listener() {
+			@Override
+			public Link accept() throws IOException {
+				return new ChannelLink(channel.accept());
+			}
+
+			@Override
+			public void close() throws IOException {
+				channel.close();
+				Files.deleteIfExists(path);
+			}
+		}};
+	}
+
+	/*
+	 * Removes a socket file that nothing listens on any more
+	 * Fails if a server is still listening on it or if the path is not a socket, e.g. a mistyped path to a regular file
+	 */
+	private void removeStale() throws IOException {
+		if(!Files.exists(path, LinkOption.NOFOLLOW_LINKS))
+			return;
+		if(!Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).isOther())
+			throw new IOException("Not a socket: " + path);
+
+		SocketChannel live;
+		try {
+			live = SocketChannel.open(UnixDomainSocketAddress.of(path));
+		} catch (ConnectException ce) {
+			Files.deleteIfExists(path);
+			return;
+		}
+		live.close();
+		throw new IOException("Address already in use: " + this);
+	}
+
+	private static synchronized ScheduledExecutorService timeouts() {
+		if(timeouts == null) {
+			timeouts = Executors.newSingleThreadScheduledExecutor(task -> {
+				Thread thread = new Thread(task, "unix-read-timeouts");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return timeouts;
+	}
+
+	@Override
+	public String name() {
+		return "unix." + path.toAbsolutePath().normalize(); // Sockets of the same file name in other directories are other addresses
+	}
+
+	@Override
+	public String toString() {
+		return "unix:" + path;
+	}
+
+	/*
+	 * A connected channel read and written through streams of its own
+	 * The streams of java.nio.channels.Channels hold one lock for reading and writing a blocking channel, so a thread
+	 * waiting to read would hold up every write
+	 */
+	private static final class ChannelLink implements Link {
+		private final SocketChannel channel;
+		private final InputStream input;
+		private final OutputStream output;
+		private volatile int readTimeoutMillis;
+		private volatile boolean timedOut;
+
+		private ChannelLink(SocketChannel channel) {
+			this.channel = channel;
+			this.input = new InputStream() {
+				@Override
+				public int read() throws IOException {
+					byte[] one = new byte[1];
+					return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+				}
+
+				@Override
+				public int read(byte[] bytes, int offset, int length) throws IOException {
+					if(length == 0)
+						return 0;
+					int timeout = readTimeoutMillis;
+					if(timeout == 0)
+						return channel.read(ByteBuffer.wrap(bytes, offset, length));
+
+					ScheduledFuture<?> expiry = timeouts().schedule(ChannelLink.this::expire, timeout, TimeUnit.MILLISECONDS);
+					try {
+						return channel.read(ByteBuffer.wrap(bytes, offset, length));
+					} catch (AsynchronousCloseException ace) {
+						if(timedOut)
+							throw new SocketTimeoutException("Read timed out");
+						throw ace;
+					} finally {
+						expiry.cancel(false);
+					}
+				}
+			};
+			this.output = new OutputStream() {
+				@Override
+				public void write(int b) throws IOException {
+					write(new byte[] {(byte) b}, 0, 1);
+				}
+
+				@Override
+				public void write(byte[] bytes, int offset, int length) throws IOException {
+					ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+					while(buffer.hasRemaining())
+						channel.write(buffer);
+				}
+			};
+		}
+
+		@Override
+		public InputStream input() {
+			return input;
+		}
+
+		@Override
+		public OutputStream output() {
+			return output;
+		}
+
+		/**
+		 * A blocking channel cannot time out a read, so a read that outlasts the timeout closes the channel instead
+		 * The connection is lost either way, as it is after a socket's read times out here
+		 */
+		@Override
+		public void setReadTimeout(int millis) {
+			readTimeoutMillis = millis;
+		}
+
+		/*
+		 * Fails the read in progress
+		 */
+		private void expire() {
+			timedOut = true;
+			try {
+				channel.close();
+			} catch (IOException ioe) {
+				// TODO: Handle
+				System.out.println("Error closing channel");
+			}
+		}
+
+		@Override
+		public void shutdownOutput() throws IOException {
+			channel.shutdownOutput();
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,187 @@
+package com.jaewanyun.omoc.store;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.jaewanyun.omoc.GameSettings;
+import com.jaewanyun.omoc.GameState;
+
+/**
+ * Command line tool for game archives
+ *
+ * pack (journal directory) (archive) > packs the finished games in the directory into a new archive; a game without a winner
+ * is taken as finished once it has gone GameRecorder.IDLE_MILLIS without a move, since its journal is closed by then
+ * stats (archive) [threads] > prints win rates and durations per settings and the most frequent openings
+ * book (archive) (book) [depth] [min games] > builds an opening book for games played with the default settings
+ */
+public class ArchiveTool {
+
+	private static final int TOP_OPENINGS = 10;
+	private static final int BOOK_DEPTH = 12;
+	private static final int BOOK_MIN_GAMES = 2;
+
+	public static void main(String[] args) throws Exception {
+		if(args.length >= 3 && args[0].equals("pack")) {
+			pack(Paths.get(args[1]), Paths.get(args[2]));
+		} else if(args.length >= 2 && args[0].equals("stats")) {
+			int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+			stats(Paths.get(args[1]), threads);
+		} else if(args.length >= 3 && args[0].equals("book")) {
+			int depth = args.length > 3 ? Integer.parseInt(args[3]) : BOOK_DEPTH;
+			int minGames = args.length > 4 ? Integer.parseInt(args[4]) : BOOK_MIN_GAMES;
+			book(Paths.get(args[1]), Paths.get(args[2]), depth, minGames);
+		} else {
+			System.out.println("Usage: pack (journal directory) (archive) | stats (archive) [threads] | book (archive) (book) [depth] [min games]");
+		}
+	}
+
+	private static void pack(Path journals, Path archive) throws IOException {
+		ArrayList<Path> paths = new ArrayList<>();
+		try(DirectoryStream<Path> stream = Files.newDirectoryStream(journals, "*.omj")) {
+			for(Path path : stream)
+				paths.add(path);
+		}
+		Collections.sort(paths);
+
+		int packed = 0;
+		long idleSince = System.currentTimeMillis() - GameRecorder.IDLE_MILLIS;
+		try(GameArchiveWriter writer = new GameArchiveWriter(archive)) {
+			for(Path path : paths) {
+				MoveJournalReader reader = new MoveJournalReader(path);
+				if(inProgress(reader, idleSince))
+					continue;
+				writer.add(reader);
+				packed++;
+			}
+		}
+		System.out.println("Packed " + packed + " games into " + archive + "; " + (paths.size() - packed) + " still in progress");
+	}
+
+	/*
+	 * A game may still be recorded if it has no winner and its last move is recent
+	 */
+	private static boolean inProgress(MoveJournalReader reader, long idleSince) {
+		int moves = reader.moveCount();
+		long activity = moves > 0 ? reader.timestamp(moves - 1) : reader.created();
+		return activity >= idleSince && reader.replay().checkStatus() == GameState.BLANK;
+	}
+
+	private static void book(Path archive, Path book, int depth, int minGames) throws IOException {
+		OpeningBookBuilder builder = new OpeningBookBuilder(new GameSettings(), depth);
+		try(GameArchiveReader reader = new GameArchiveReader(archive)) {
+			reader.scan(GameArchive.SETTINGS | GameArchive.RESULT | GameArchive.MOVES, builder::add);
+		}
+		builder.write(book, minGames);
+		System.out.println("Wrote " + new OpeningBook(book).size() + " of " + builder.size() + " moves to " + book);
+	}
+
+	/*
+	 * Totals for one combination of settings
+	 */
+	private static class Totals {
+		private long games;
+		private long whiteWins;
+		private long blackWins;
+		private long duration;
+		private long moves;
+
+		private void add(Totals other) {
+			games += other.games;
+			whiteWins += other.whiteWins;
+			blackWins += other.blackWins;
+			duration += other.duration;
+			moves += other.moves;
+		}
+	}
+
+	/*
+	 * What one reader thread gathered
+	 */
+	private static class Partial {
+		private final HashMap<String, Totals> bySettings = new HashMap<>();
+		private final HashMap<Integer, Long> openings = new HashMap<>(); // First move, x << 16 | y
+	}
+
+	private static void stats(Path archive, int threads) throws Exception {
+		long start = System.nanoTime();
+		try(GameArchiveReader reader = new GameArchiveReader(archive)) {
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			ArrayList<Future<Partial>> futures = new ArrayList<>();
+			for(int t = 0; t < threads; t++) {
+				int first = t;
+				// Each thread reads every threads-th block
+				futures.add(executor.submit(() -> {
+					Partial partial = new Partial();
+					for(int b = first; b < reader.blockCount(); b += threads)
+						gather(reader.readBlock(b, GameArchive.ALL), partial);
+					return partial;
+				}));
+			}
+
+			Partial total = new Partial();
+			for(Future<Partial> future : futures) {
+				Partial partial = future.get();
+				for(Map.Entry<String, Totals> entry : partial.bySettings.entrySet())
+					total.bySettings.computeIfAbsent(entry.getKey(), key -> new Totals()).add(entry.getValue());
+				for(Map.Entry<Integer, Long> entry : partial.openings.entrySet())
+					total.openings.merge(entry.getKey(), entry.getValue(), Long::sum);
+			}
+			executor.shutdown();
+
+			System.out.println(reader.gameCount() + " games in " + reader.blockCount() + " blocks, scanned in "
+					+ (System.nanoTime() - start) / 1000000 + " ms with " + threads + " threads");
+			System.out.println();
+			System.out.println("settings\tgames\twhite\tblack\tavg moves\tavg seconds");
+			for(Map.Entry<String, Totals> entry : total.bySettings.entrySet()) {
+				Totals totals = entry.getValue();
+				System.out.println(entry.getKey() + "\t" + totals.games
+						+ "\t" + percent(totals.whiteWins, totals.games)
+						+ "\t" + percent(totals.blackWins, totals.games)
+						+ "\t" + totals.moves / Math.max(1, totals.games)
+						+ "\t" + totals.duration / 1000 / Math.max(1, totals.games));
+			}
+
+			System.out.println();
+			System.out.println("opening\tgames");
+			ArrayList<Map.Entry<Integer, Long>> openings = new ArrayList<>(total.openings.entrySet());
+			openings.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+			for(int j = 0; j < Math.min(TOP_OPENINGS, openings.size()); j++) {
+				int cell = openings.get(j).getKey();
+				System.out.println((cell >>> 16) + " " + (cell & 0xFFFF) + "\t" + openings.get(j).getValue());
+			}
+		}
+	}
+
+	private static void gather(GameArchive.Block block, Partial partial) {
+		for(int j = 0; j < block.gameCount; j++) {
+			String key = block.width[j] + "x" + block.height[j] + " " + block.stonesPerTurn[j] + "/turn " + block.stonesToWin[j] + " to win";
+			Totals totals = partial.bySettings.computeIfAbsent(key, k -> new Totals());
+			totals.games++;
+			if(block.winner[j] == GameState.WHITE)
+				totals.whiteWins++;
+			else if(block.winner[j] == GameState.BLACK)
+				totals.blackWins++;
+			totals.duration += block.duration[j];
+			totals.moves += block.moveCount(j);
+
+			if(block.moveCount(j) > 0) {
+				int first = block.moveStart[j];
+				partial.openings.merge(block.moveX[first] << 16 | block.moveY[first], 1L, Long::sum);
+			}
+		}
+	}
+
+	private static String percent(long part, long whole) {
+		return whole == 0 ? "-" : (part * 100 / whole) + "%";
+	}
+}
@@ -0,0 +1,55 @@
+package com.jaewanyun.omoc.store;
+
+/**
+ * Constants and the in-memory block of the columnar game archive
+ *
+ * An archive is a sequence of blocks followed by a footer
+ * Block: game count, then the raw and compressed length of each column, then each column deflated on its own
+ * Footer: block count, the offset of every block, the total number of games, the footer offset and the magic
+ *
+ * Columns, one value per game unless noted:
+ * SETTINGS: width, height, stones per turn, stones to win, seconds allotted as ints
+ * RESULT: winner as a byte
+ * DURATION: milliseconds from the first to the last move as a long
+ * MOVES: move count as an int per game, then x and y as shorts and the color as a byte per move
+ */
+public final class GameArchive {
+
+	static final int MAGIC = 0x4F4D4131; // OMA1
+	static final int TRAILER_SIZE = 12;
+	public static final int SETTINGS = 1;
+	public static final int RESULT = 1 << 1;
+	public static final int DURATION = 1 << 2;
+	public static final int MOVES = 1 << 3;
+	public static final int ALL = SETTINGS | RESULT | DURATION | MOVES;
+	static final int COLUMN_COUNT = 4;
+
+	private GameArchive() {throw new UnsupportedOperationException();}
+
+	/**
+	 * The games of one block with the requested columns decoded into arrays
+	 * Arrays of columns that were not requested are null
+	 */
+	public static final class Block {
+		public final int gameCount;
+		public int[] width;
+		public int[] height;
+		public int[] stonesPerTurn;
+		public int[] stonesToWin;
+		public int[] secondsAllotted;
+		public byte[] winner;
+		public long[] duration;
+		public int[] moveStart; // Moves of game j are at moveStart[j] until moveStart[j + 1]
+		public short[] moveX;
+		public short[] moveY;
+		public byte[] moveColor;
+
+		Block(int gameCount) {
+			this.gameCount = gameCount;
+		}
+
+		public int moveCount(int game) {
+			return moveStart[game + 1] - moveStart[game];
+		}
+	}
+}
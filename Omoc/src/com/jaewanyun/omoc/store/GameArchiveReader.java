@@ -0,0 +1,176 @@
+package com.jaewanyun.omoc.store;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Scans a columnar game archive block by block
+ * Only the requested columns are read and inflated
+ * Blocks are read with positional reads, so several threads may read different blocks of one reader at once
+ */
+public class GameArchiveReader implements Closeable {
+
+	private final FileChannel channel;
+	private final long[] blockOffsets;
+	private final long totalGames;
+
+	/**
+	 * @param path File of the archive
+	 * @throws IOException When the file cannot be read or is not an archive
+	 */
+	public GameArchiveReader(Path path) throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			if(size < GameArchive.TRAILER_SIZE)
+				throw new IOException("Not a game archive: " + path);
+			ByteBuffer trailer = read(size - GameArchive.TRAILER_SIZE, GameArchive.TRAILER_SIZE);
+			long footerOffset = trailer.getLong();
+			if(trailer.getInt() != GameArchive.MAGIC)
+				throw new IOException("Not a game archive: " + path);
+
+			ByteBuffer footer = read(footerOffset, (int) (size - GameArchive.TRAILER_SIZE - footerOffset));
+			blockOffsets = new long[footer.getInt()];
+			for(int j = 0; j < blockOffsets.length; j++)
+				blockOffsets[j] = footer.getLong();
+			totalGames = footer.getLong();
+		} catch (IOException ioe) {
+			channel.close();
+			throw ioe;
+		}
+	}
+
+	public int blockCount() {
+		return blockOffsets.length;
+	}
+
+	public long gameCount() {
+		return totalGames;
+	}
+
+	/**
+	 * @param index Index of the block
+	 * @param columns The columns to decode, e.g. GameArchive.SETTINGS | GameArchive.RESULT
+	 * @return The block with the requested columns filled in
+	 * @throws IOException When the block cannot be read
+	 */
+	public GameArchive.Block readBlock(int index, int columns) throws IOException {
+		long offset = blockOffsets[index];
+		ByteBuffer header = read(offset, 4 + GameArchive.COLUMN_COUNT * 8);
+		GameArchive.Block block = new GameArchive.Block(header.getInt());
+
+		Inflater inflater = new Inflater();
+		try {
+			long position = offset + header.capacity();
+			for(int c = 0; c < GameArchive.COLUMN_COUNT; c++) {
+				int rawLength = header.getInt();
+				int compressedLength = header.getInt();
+				if((columns & (1 << c)) != 0) {
+					ByteBuffer raw = inflate(inflater, read(position, compressedLength), rawLength);
+					decode(block, 1 << c, raw);
+				}
+				position += compressedLength;
+			}
+		} finally {
+			inflater.end();
+		}
+		return block;
+	}
+
+	/**
+	 * Reads every block in order on the calling thread
+	 *
+	 * @param columns The columns to decode
+	 * @param visitor Receives each block
+	 * @throws IOException When a block cannot be read
+	 */
+	public void scan(int columns, Consumer<GameArchive.Block> visitor) throws IOException {
+		for(int j = 0; j < blockOffsets.length; j++)
+			visitor.accept(readBlock(j, columns));
+	}
+
+	private static void decode(GameArchive.Block block, int column, ByteBuffer raw) {
+		int games = block.gameCount;
+		if(column == GameArchive.SETTINGS) {
+			block.width = new int[games];
+			block.height = new int[games];
+			block.stonesPerTurn = new int[games];
+			block.stonesToWin = new int[games];
+			block.secondsAllotted = new int[games];
+			for(int j = 0; j < games; j++) {
+				block.width[j] = raw.getInt();
+				block.height[j] = raw.getInt();
+				block.stonesPerTurn[j] = raw.getInt();
+				block.stonesToWin[j] = raw.getInt();
+				block.secondsAllotted[j] = raw.getInt();
+			}
+		} else if(column == GameArchive.RESULT) {
+			block.winner = new byte[games];
+			raw.get(block.winner);
+		} else if(column == GameArchive.DURATION) {
+			block.duration = new long[games];
+			raw.asLongBuffer().get(block.duration);
+		} else if(column == GameArchive.MOVES) {
+			block.moveStart = new int[games + 1];
+			for(int j = 0; j < games; j++)
+				block.moveStart[j + 1] = block.moveStart[j] + raw.getInt();
+
+			int total = block.moveStart[games];
+			block.moveX = new short[total];
+			block.moveY = new short[total];
+			block.moveColor = new byte[total];
+			for(int j = 0; j < games; j++) {
+				int start = block.moveStart[j];
+				int count = block.moveCount(j);
+				raw.asShortBuffer().get(block.moveX, start, count);
+				raw.position(raw.position() + count * 2);
+				raw.asShortBuffer().get(block.moveY, start, count);
+				raw.position(raw.position() + count * 2);
+				raw.get(block.moveColor, start, count);
+			}
+		}
+	}
+
+	private static ByteBuffer inflate(Inflater inflater, ByteBuffer compressed, int rawLength) throws IOException {
+		inflater.reset();
+		inflater.setInput(compressed.array(), 0, compressed.capacity());
+		byte[] raw = new byte[rawLength];
+		try {
+			int size = 0;
+			while(size < rawLength && !inflater.finished()) {
+				int inflated = inflater.inflate(raw, size, rawLength - size);
+				if(inflated == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+					throw new IOException("Truncated block");
+				size += inflated;
+			}
+			if(size < rawLength)
+				throw new IOException("Truncated block");
+		} catch (DataFormatException dfe) {
+			throw new IOException("Corrupt block - " + dfe.getMessage());
+		}
+		return ByteBuffer.wrap(raw);
+	}
+
+	private ByteBuffer read(long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while(buffer.hasRemaining()) {
+			if(channel.read(buffer, position + buffer.position()) < 0)
+				throw new EOFException();
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
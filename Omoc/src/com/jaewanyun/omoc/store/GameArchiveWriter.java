@@ -0,0 +1,191 @@
+package com.jaewanyun.omoc.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import com.jaewanyun.omoc.GameSettings;
+import com.jaewanyun.omoc.GameState;
+
+/**
+ * Writes finished games into a columnar archive
+ * Games are buffered column by column and written as a compressed block every BLOCK_GAMES games
+ */
+public class GameArchiveWriter implements Closeable {
+
+	static final int BLOCK_GAMES = 4096;
+	private final FileChannel channel;
+	private final Deflater deflater;
+	private long[] blockOffsets;
+	private int blockCount;
+	private long totalGames;
+
+	// Columns of the block being filled
+	private int games;
+	private final ByteBuffer settings;
+	private final ByteBuffer results;
+	private final ByteBuffer durations;
+	private final ByteBuffer moveCounts;
+	private ByteBuffer moves;
+
+	/**
+	 * @param path File to create; an existing file is replaced
+	 * @throws IOException When the file cannot be created
+	 */
+	public GameArchiveWriter(Path path) throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		deflater = new Deflater(Deflater.BEST_SPEED);
+		blockOffsets = new long[16];
+		settings = ByteBuffer.allocate(BLOCK_GAMES * 20);
+		results = ByteBuffer.allocate(BLOCK_GAMES);
+		durations = ByteBuffer.allocate(BLOCK_GAMES * 8);
+		moveCounts = ByteBuffer.allocate(BLOCK_GAMES * 4);
+		moves = ByteBuffer.allocate(BLOCK_GAMES * 64 * 5);
+	}
+
+	/**
+	 * Adds the game recorded in a journal; its winner is found by replaying it
+	 *
+	 * @param journal The journal of the game
+	 * @throws IOException When a block cannot be written
+	 */
+	public void add(MoveJournalReader journal) throws IOException {
+		GameState gameState = journal.replay();
+		int moveCount = journal.moveCount();
+		long duration = moveCount == 0 ? 0 : journal.timestamp(moveCount - 1) - journal.timestamp(0);
+
+		short[] xs = new short[moveCount];
+		short[] ys = new short[moveCount];
+		byte[] colors = new byte[moveCount];
+		for(int j = 0; j < moveCount; j++) {
+			xs[j] = (short) journal.x(j);
+			ys[j] = (short) journal.y(j);
+			colors[j] = (byte) journal.color(j);
+		}
+		add(journal.settings(), gameState.checkStatus(), duration, xs, ys, colors);
+	}
+
+	/**
+	 * @param gameSettings Settings the game was played with
+	 * @param winner WHITE, BLACK or BLANK if there was none
+	 * @param durationMillis Length of the game
+	 * @param xs Columns of the moves in order
+	 * @param ys Rows of the moves in order
+	 * @param colors Colors of the moves in order
+	 * @throws IOException When a block cannot be written
+	 */
+	public synchronized void add(GameSettings gameSettings, int winner, long durationMillis, short[] xs, short[] ys, byte[] colors) throws IOException {
+		settings.putInt(gameSettings.gridWidth);
+		settings.putInt(gameSettings.gridHeight);
+		settings.putInt(gameSettings.stonesPerTurn);
+		settings.putInt(gameSettings.stonesToWin);
+		settings.putInt(gameSettings.secondsAllotted);
+		results.put((byte) winner);
+		durations.putLong(durationMillis);
+		moveCounts.putInt(xs.length);
+
+		if(moves.remaining() < xs.length * 5) {
+			ByteBuffer larger = ByteBuffer.allocate(Math.max(moves.capacity() * 2, moves.position() + xs.length * 5));
+			moves.flip();
+			larger.put(moves);
+			moves = larger;
+		}
+		for(int j = 0; j < xs.length; j++)
+			moves.putShort(xs[j]);
+		for(int j = 0; j < ys.length; j++)
+			moves.putShort(ys[j]);
+		moves.put(colors);
+
+		if(++games == BLOCK_GAMES)
+			writeBlock();
+	}
+
+	/*
+	 * Compresses each column on its own so that a scan can skip the columns it does not need
+	 */
+	private void writeBlock() throws IOException {
+		if(games == 0)
+			return;
+
+		// Moves are stored after the move counts of every game in the block
+		ByteBuffer moveColumn = ByteBuffer.allocate(moveCounts.position() + moves.position());
+		moveColumn.put(moveCounts.array(), 0, moveCounts.position());
+		moveColumn.put(moves.array(), 0, moves.position());
+
+		ByteBuffer[] raw = {settings, results, durations, moveColumn};
+		byte[][] compressed = new byte[GameArchive.COLUMN_COUNT][];
+		ByteBuffer header = ByteBuffer.allocate(4 + GameArchive.COLUMN_COUNT * 8);
+		header.putInt(games);
+		for(int c = 0; c < GameArchive.COLUMN_COUNT; c++) {
+			compressed[c] = deflate(raw[c].array(), raw[c].position());
+			header.putInt(raw[c].position());
+			header.putInt(compressed[c].length);
+		}
+
+		if(blockCount == blockOffsets.length)
+			blockOffsets = Arrays.copyOf(blockOffsets, blockCount * 2);
+		blockOffsets[blockCount++] = channel.position();
+
+		header.flip();
+		write(header);
+		for(int c = 0; c < GameArchive.COLUMN_COUNT; c++)
+			write(ByteBuffer.wrap(compressed[c]));
+
+		totalGames += games;
+		games = 0;
+		settings.clear();
+		results.clear();
+		durations.clear();
+		moveCounts.clear();
+		moves.clear();
+	}
+
+	private byte[] deflate(byte[] data, int length) {
+		deflater.reset();
+		deflater.setInput(data, 0, length);
+		deflater.finish();
+		byte[] out = new byte[length + length / 1000 + 64];
+		int size = 0;
+		while(!deflater.finished()) {
+			if(size == out.length)
+				out = Arrays.copyOf(out, out.length * 2);
+			size += deflater.deflate(out, size, out.length - size);
+		}
+		return Arrays.copyOf(out, size);
+	}
+
+	private void write(ByteBuffer buffer) throws IOException {
+		while(buffer.hasRemaining())
+			channel.write(buffer);
+	}
+
+	/**
+	 * Writes the last block and the footer
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			writeBlock();
+
+			long footerOffset = channel.position();
+			ByteBuffer footer = ByteBuffer.allocate(4 + blockCount * 8 + 8 + GameArchive.TRAILER_SIZE);
+			footer.putInt(blockCount);
+			for(int j = 0; j < blockCount; j++)
+				footer.putLong(blockOffsets[j]);
+			footer.putLong(totalGames);
+			footer.putLong(footerOffset);
+			footer.putInt(GameArchive.MAGIC);
+			footer.flip();
+			write(footer);
+			channel.force(true);
+		} finally {
+			deflater.end();
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,255 @@
+package com.jaewanyun.omoc.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.jaewanyun.omoc.BoardSnapshot;
+import com.jaewanyun.omoc.GameState;
+
+/**
+ * Turns a stream of full game states into move journals, one journal per game
+ * Consecutive states of a game are diffed and only the changed cells are journaled
+ * A game whose board is cleared starts a new journal
+ * A background thread commits each group when it is due, so that no move waits longer than a group for a later move
+ * Only games in progress hold a journal open; a journal is closed once its game is won, ended or left idle
+ */
+public class GameRecorder implements Closeable {
+
+	/**
+	 * Time a game may go without a move before its journal is closed
+	 */
+	public static final long IDLE_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+	private final Path directory;
+	private final long idleNanos;
+	private final HashMap<Integer, Recording> games; // Games in progress
+	private final Thread committer;
+	private volatile boolean closed;
+
+	/*
+	 * The journal of a game and the last state written to it
+	 */
+	private static class Recording {
+		private final MoveJournal journal;
+		private BoardSnapshot last;
+		private long lastRecorded = System.nanoTime();
+
+		private Recording(MoveJournal journal) {
+			this.journal = journal;
+		}
+	}
+
+	/**
+	 * @param directory Directory journals are written to; created if missing
+	 * @throws IOException When the directory cannot be created
+	 */
+	public GameRecorder(Path directory) throws IOException {
+		this(directory, IDLE_MILLIS);
+	}
+
+	/**
+	 * @param directory Directory journals are written to; created if missing
+	 * @param idleMillis Time a game may go without a move before its journal is closed
+	 * @throws IOException When the directory cannot be created
+	 */
+	public GameRecorder(Path directory, long idleMillis) throws IOException {
+		if(idleMillis <= 0)
+			throw new IllegalArgumentException();
+		this.directory = Files.createDirectories(directory);
+		this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+		games = new HashMap<>();
+
+		// Commits groups that are waiting for more moves and closes idle games,
+		// sleeping until the next group or game is due or a new group starts
+		committer = new Thread(() -> {
+			while(!closed) {
+				long next = Long.MAX_VALUE;
+				try {
+					next = commitDue();
+				} catch (IOException ioe) {
+					// TODO: Handle
+					System.out.println("Could not commit journals: " + ioe.getMessage());
+				}
+				if(next == Long.MAX_VALUE)
+					LockSupport.park(this);
+				else
+					LockSupport.parkNanos(this, next);
+			}
+		}, "game-recorder");
+		committer.setDaemon(true);
+		committer.start();
+	}
+
+	public Path directory() {
+		return directory;
+	}
+
+	/**
+	 * Journals whatever changed in a game since the last state recorded for it
+	 * The journal of a game is closed once the game is won; a game already won when first seen is not journaled
+	 *
+	 * @param gameState The latest state of a game
+	 * @throws IOException When the journal cannot be written
+	 */
+	public synchronized void record(GameState gameState) throws IOException {
+		if(closed)
+			throw new IOException("Recorder closed");
+
+		BoardSnapshot current = gameState.snapshot();
+		Recording recording = games.get(gameState.getID());
+		boolean won = gameState.checkStatus() != GameState.BLANK;
+		if(recording == null && won)
+			return;
+
+		boolean newGame = recording == null
+				|| recording.last.width() != current.width()
+				|| recording.last.height() != current.height()
+				|| (current.isEmpty() && !recording.last.isEmpty());
+		if(newGame) {
+			if(recording != null)
+				recording.journal.close();
+			Path path = directory.resolve(gameState.getID() + "-" + System.currentTimeMillis() + ".omj");
+			recording = new Recording(MoveJournal.create(path, gameState.getID(), gameState.getSettings()));
+			games.put(gameState.getID(), recording);
+		}
+
+		BoardSnapshot previous = recording.last;
+		boolean appended = false;
+		for(int j = 0; j < current.width(); j++) {
+			if(current.sameColumn(previous, j))
+				continue;
+			for(int k = 0; k < current.height(); k++) {
+				int before = previous == null ? GameState.BLANK : previous.get(j, k);
+				int after = current.get(j, k);
+				if(before != after) {
+					recording.journal.append(j, k, after, current.turnCounter());
+					appended = true;
+				}
+			}
+		}
+		recording.last = current;
+		recording.lastRecorded = System.nanoTime();
+
+		if(won) {
+			finish(gameState.getID());
+			return;
+		}
+
+		// A group may have started; the committer sleeps until the earliest one is due
+		if(appended)
+			LockSupport.unpark(committer);
+	}
+
+	/**
+	 * Commits and closes the journal of a game, e.g. once its players have left
+	 * A later state of the game starts a new journal
+	 *
+	 * @param gameId Identification number of the game
+	 * @throws IOException When the journal cannot be written
+	 */
+	public synchronized void finish(int gameId) throws IOException {
+		Recording recording = games.remove(gameId);
+		if(recording != null)
+			recording.journal.close();
+	}
+
+	/**
+	 * Continues recording a game into an existing journal, e.g. after a restart
+	 *
+	 * @param journal File of the journal
+	 * @param gameState The state the journal replays to
+	 * @throws IOException When the journal cannot be opened
+	 */
+	public synchronized void resume(Path journal, GameState gameState) throws IOException {
+		Recording recording = new Recording(MoveJournal.reopen(journal));
+		recording.last = gameState.snapshot();
+		Recording replaced = games.put(gameState.getID(), recording);
+		if(replaced != null)
+			replaced.journal.close();
+	}
+
+	/*
+	 * Where the journal of each game in progress stands; every listed move is on disk
+	 */
+	synchronized Position[] positions() throws IOException {
+		commit();
+		Position[] positions = new Position[games.size()];
+		int j = 0;
+		for(Map.Entry<Integer, Recording> entry : games.entrySet()) {
+			Recording recording = entry.getValue();
+			positions[j++] = new Position(entry.getKey(), recording.journal.path(), recording.journal.size(), recording.last);
+		}
+		return positions;
+	}
+
+	/*
+	 * A game, its journal and the state after the journaled moves
+	 */
+	static final class Position {
+		final int gameId;
+		final Path journal;
+		final int moves;
+		final BoardSnapshot board;
+
+		Position(int gameId, Path journal, int moves, BoardSnapshot board) {
+			this.gameId = gameId;
+			this.journal = journal;
+			this.moves = moves;
+			this.board = board;
+		}
+	}
+
+	/**
+	 * Forces every pending move to disk
+	 *
+	 * @throws IOException When a journal cannot be written
+	 */
+	public synchronized void commit() throws IOException {
+		for(Recording recording : games.values())
+			recording.journal.commit();
+	}
+
+	/*
+	 * Commits the groups that are due and closes the games left idle
+	 * Returns nanoseconds until the next group or idle game is due, or Long.MAX_VALUE if there is none
+	 */
+	private synchronized long commitDue() throws IOException {
+		long now = System.nanoTime();
+		long next = Long.MAX_VALUE;
+		for(Iterator<Recording> iterator = games.values().iterator(); iterator.hasNext();) {
+			Recording recording = iterator.next();
+			long idle = now - recording.lastRecorded;
+			if(idle >= idleNanos) {
+				iterator.remove();
+				recording.journal.close();
+				continue;
+			}
+			next = Math.min(next, Math.min(recording.journal.commitIfDue(), idleNanos - idle));
+		}
+		return next;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		closed = true;
+		LockSupport.unpark(committer);
+		IOException failure = null;
+		for(Recording recording : games.values()) {
+			try {
+				recording.journal.close();
+			} catch (IOException ioe) {
+				failure = ioe;
+			}
+		}
+		games.clear();
+		if(failure != null)
+			throw failure;
+	}
+}
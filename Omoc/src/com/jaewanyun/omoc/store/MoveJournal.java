@@ -0,0 +1,171 @@
+package com.jaewanyun.omoc.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.jaewanyun.omoc.GameSettings;
+
+/**
+ * An append-only journal of the moves of one game
+ * Each move is a fixed size record; records are buffered and written with a single write and force per group
+ *
+ * Layout: a 40 byte header followed by 24 byte records
+ * Header: magic, game id, width, height, stones per turn, stones to win, seconds allotted, unused, creation time
+ * Record: sequence, x, y, timestamp, color, unused, turn counter after the move
+ */
+public class MoveJournal implements Closeable {
+
+	static final int MAGIC = 0x4F4D4A31; // OMJ1
+	static final int HEADER_SIZE = 40;
+	static final int RECORD_SIZE = 24;
+	private static final int GROUP_SIZE = 256; // Records per group commit
+	private static final long GROUP_NANOS = 50_000_000L; // Longest a record waits for its group
+	private final Path path;
+	private final FileChannel channel;
+	private final ByteBuffer pending;
+	private int sequence;
+	private long oldestPending;
+
+	private MoveJournal(Path path, FileChannel channel, int sequence) {
+		this.path = path;
+		this.channel = channel;
+		this.sequence = sequence;
+		pending = ByteBuffer.allocateDirect(GROUP_SIZE * RECORD_SIZE);
+	}
+
+	/**
+	 * Creates a new journal, failing if the file already exists
+	 *
+	 * @param path File to create
+	 * @param gameId Identification number of the game
+	 * @param settings Settings the game is played with
+	 * @return A journal positioned after its header
+	 * @throws IOException When the file cannot be created
+	 */
+	public static MoveJournal create(Path path, int gameId, GameSettings settings) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC);
+		header.putInt(gameId);
+		header.putInt(settings.gridWidth);
+		header.putInt(settings.gridHeight);
+		header.putInt(settings.stonesPerTurn);
+		header.putInt(settings.stonesToWin);
+		header.putInt(settings.secondsAllotted);
+		header.putInt(0);
+		header.putLong(System.currentTimeMillis());
+		header.flip();
+		while(header.hasRemaining())
+			channel.write(header);
+		channel.force(true);
+		return new MoveJournal(path, channel, 0);
+	}
+
+	/**
+	 * Reopens an existing journal to continue appending
+	 * A partially written last record is cut off
+	 *
+	 * @param path File of the journal
+	 * @return A journal positioned after its last whole record
+	 * @throws IOException When the file cannot be opened or is not a journal
+	 */
+	public static MoveJournal reopen(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		ByteBuffer magic = ByteBuffer.allocate(4);
+		channel.read(magic, 0);
+		if(magic.getInt(0) != MAGIC) {
+			channel.close();
+			throw new IOException("Not a move journal: " + path);
+		}
+
+		int records = (int) ((channel.size() - HEADER_SIZE) / RECORD_SIZE);
+		long end = HEADER_SIZE + (long) records * RECORD_SIZE;
+		channel.truncate(end);
+		channel.position(end);
+		return new MoveJournal(path, channel, records);
+	}
+
+	public Path path() {
+		return path;
+	}
+
+	/**
+	 * Appends a move; it becomes durable with its group
+	 *
+	 * @param x Column of the cell
+	 * @param y Row of the cell
+	 * @param color Color placed, or BLANK when a stone was removed
+	 * @param turnCounter Turn counter of the board after the move
+	 * @throws IOException When a group commit fails
+	 */
+	public synchronized void append(int x, int y, int color, int turnCounter) throws IOException {
+		if(pending.position() == 0)
+			oldestPending = System.nanoTime();
+
+		pending.putInt(sequence++);
+		pending.putShort((short) x);
+		pending.putShort((short) y);
+		pending.putLong(System.currentTimeMillis());
+		pending.put((byte) color);
+		pending.put((byte) 0);
+		pending.putShort((short) 0);
+		pending.putInt(turnCounter);
+
+		if(!pending.hasRemaining() || System.nanoTime() - oldestPending >= GROUP_NANOS)
+			commit();
+	}
+
+	/**
+	 * Commits the pending group once its oldest record has waited for as long as a group may
+	 * Called by a committer so that a group is not left waiting for an append that never comes
+	 *
+	 * @return Nanoseconds until the pending group is due, or Long.MAX_VALUE if nothing is pending
+	 * @throws IOException When the write fails
+	 */
+	public synchronized long commitIfDue() throws IOException {
+		if(pending.position() == 0)
+			return Long.MAX_VALUE;
+
+		long due = oldestPending + GROUP_NANOS - System.nanoTime();
+		if(due > 0)
+			return due;
+		commit();
+		return Long.MAX_VALUE;
+	}
+
+	/**
+	 * Writes and forces every pending record
+	 *
+	 * @throws IOException When the write fails
+	 */
+	public synchronized void commit() throws IOException {
+		if(pending.position() == 0)
+			return;
+
+		pending.flip();
+		while(pending.hasRemaining())
+			channel.write(pending);
+		pending.clear();
+		channel.force(false);
+	}
+
+	/**
+	 * @return The number of moves appended, including those not yet committed
+	 */
+	public synchronized int size() {
+		return sequence;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			commit();
+		} finally {
+			channel.close();
+		}
+	}
+}
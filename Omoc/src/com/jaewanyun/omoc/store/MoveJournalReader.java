@@ -0,0 +1,124 @@
+package com.jaewanyun.omoc.store;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.jaewanyun.omoc.Board;
+import com.jaewanyun.omoc.GameSettings;
+import com.jaewanyun.omoc.GameState;
+
+/**
+ * Reads a move journal through a memory mapping
+ * Records are read in place; nothing is deserialized until a game is replayed
+ */
+public class MoveJournalReader {
+
+	private final Path path;
+	private final MappedByteBuffer buffer;
+	private final int moveCount;
+
+	/**
+	 * @param path File of the journal
+	 * @throws IOException When the file cannot be mapped or is not a journal
+	 */
+	public MoveJournalReader(Path path) throws IOException {
+		this.path = path;
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if(channel.size() < MoveJournal.HEADER_SIZE)
+				throw new IOException("Not a move journal: " + path);
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		if(buffer.getInt(0) != MoveJournal.MAGIC)
+			throw new IOException("Not a move journal: " + path);
+
+		// A partially written last record is ignored
+		moveCount = (buffer.capacity() - MoveJournal.HEADER_SIZE) / MoveJournal.RECORD_SIZE;
+	}
+
+	public Path path() {
+		return path;
+	}
+
+	public int gameId() {
+		return buffer.getInt(4);
+	}
+
+	/**
+	 * @return A new copy of the settings the game was started with
+	 */
+	public GameSettings settings() {
+		GameSettings settings = new GameSettings();
+		settings.gridWidth = buffer.getInt(8);
+		settings.gridHeight = buffer.getInt(12);
+		settings.stonesPerTurn = buffer.getInt(16);
+		settings.stonesToWin = buffer.getInt(20);
+		settings.secondsAllotted = buffer.getInt(24);
+		return settings;
+	}
+
+	public long created() {
+		return buffer.getLong(32);
+	}
+
+	public int moveCount() {
+		return moveCount;
+	}
+
+	public int sequence(int move) {
+		return buffer.getInt(offset(move));
+	}
+
+	public int x(int move) {
+		return buffer.getShort(offset(move) + 4);
+	}
+
+	public int y(int move) {
+		return buffer.getShort(offset(move) + 6);
+	}
+
+	public long timestamp(int move) {
+		return buffer.getLong(offset(move) + 8);
+	}
+
+	public int color(int move) {
+		return buffer.get(offset(move) + 16);
+	}
+
+	public int turnCounter(int move) {
+		return buffer.getInt(offset(move) + 20);
+	}
+
+	/**
+	 * Rebuilds the game as it was after a number of moves
+	 *
+	 * @param moves Number of moves to apply, from zero to moveCount()
+	 * @return A new game state
+	 */
+	public GameState replay(int moves) {
+		if(moves < 0 || moves > moveCount)
+			throw new IndexOutOfBoundsException("Move " + moves + " of " + moveCount);
+
+		Board board = new Board(settings());
+		for(int j = 0; j < moves; j++)
+			board.set(x(j), y(j), color(j));
+		if(moves > 0)
+			board.setTurnCounter(turnCounter(moves - 1));
+		return new GameState(gameId(), board);
+	}
+
+	/**
+	 * @return The game after every move in the journal
+	 */
+	public GameState replay() {
+		return replay(moveCount);
+	}
+
+	private int offset(int move) {
+		if(move < 0 || move >= moveCount)
+			throw new IndexOutOfBoundsException("Move " + move + " of " + moveCount);
+		return MoveJournal.HEADER_SIZE + move * MoveJournal.RECORD_SIZE;
+	}
+}
@@ -0,0 +1,138 @@
+package com.jaewanyun.omoc.store;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.jaewanyun.omoc.BoardSnapshot;
+import com.jaewanyun.omoc.Symmetry;
+
+/**
+ * Looks up moves played from a position in a memory mapped opening book
+ * Entries are sorted by the canonical hash of the position and read in place with a binary search
+ *
+ * Layout: a 32 byte header followed by 24 byte entries
+ * Header: magic, width, height, stones per turn, stones to win, depth, entry count
+ * Entry: canonical hash, x and y in the canonical orientation, games, wins for the side that played it, unused
+ */
+public class OpeningBook {
+
+	static final int MAGIC = 0x4F4D4231; // OMB1
+	static final int HEADER_SIZE = 32;
+	static final int ENTRY_SIZE = 24;
+	private final MappedByteBuffer buffer;
+	private final int entries;
+
+	/**
+	 * @param path File of the book
+	 * @throws IOException When the file cannot be mapped or is not a book
+	 */
+	public OpeningBook(Path path) throws IOException {
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if(channel.size() < HEADER_SIZE)
+				throw new IOException("Not an opening book: " + path);
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		if(buffer.getInt(0) != MAGIC)
+			throw new IOException("Not an opening book: " + path);
+		entries = buffer.getInt(24);
+	}
+
+	public int width() {
+		return buffer.getInt(4);
+	}
+
+	public int height() {
+		return buffer.getInt(8);
+	}
+
+	public int depth() {
+		return buffer.getInt(20);
+	}
+
+	public int size() {
+		return entries;
+	}
+
+	/**
+	 * @param board A position
+	 * @return True if the book was built for the size and settings of the board
+	 */
+	public boolean covers(BoardSnapshot board) {
+		return board.width() == width() && board.height() == height()
+				&& board.stonesPerTurn() == buffer.getInt(12) && board.stonesToWin() == buffer.getInt(16);
+	}
+
+	/**
+	 * Finds the most played move from a position
+	 *
+	 * @param board The position
+	 * @return The move as a Symmetry cell in the orientation of the board, or -1 if the position is not in the book
+	 */
+	public int bestMove(BoardSnapshot board) {
+		if(!covers(board))
+			return -1;
+
+		int first = first(Symmetry.canonicalHash(board));
+		if(first < 0)
+			return -1;
+
+		long key = key(first);
+		int best = first;
+		for(int j = first + 1; j < entries && key(j) == key; j++) {
+			if(games(j) > games(best))
+				best = j;
+		}
+
+		// Map the canonical move back onto the board as it is oriented
+		return Symmetry.toOriginal(Symmetry.canonicalTransform(board), Symmetry.cell(x(best), y(best)), board.width(), board.height());
+	}
+
+	/**
+	 * @param key Canonical hash of a position
+	 * @return Index of the first entry for the position, or -1
+	 */
+	public int first(long key) {
+		int low = 0;
+		int high = entries - 1;
+		int found = -1;
+		while(low <= high) {
+			int middle = (low + high) >>> 1;
+			int compare = Long.compare(key(middle), key);
+			if(compare < 0) {
+				low = middle + 1;
+			} else {
+				if(compare == 0)
+					found = middle;
+				high = middle - 1;
+			}
+		}
+		return found;
+	}
+
+	public long key(int entry) {
+		return buffer.getLong(offset(entry));
+	}
+
+	public int x(int entry) {
+		return buffer.getShort(offset(entry) + 8);
+	}
+
+	public int y(int entry) {
+		return buffer.getShort(offset(entry) + 10);
+	}
+
+	public int games(int entry) {
+		return buffer.getInt(offset(entry) + 12);
+	}
+
+	public int wins(int entry) {
+		return buffer.getInt(offset(entry) + 16);
+	}
+
+	private static int offset(int entry) {
+		return HEADER_SIZE + entry * ENTRY_SIZE;
+	}
+}
@@ -0,0 +1,151 @@
+package com.jaewanyun.omoc.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.jaewanyun.omoc.Board;
+import com.jaewanyun.omoc.GameSettings;
+import com.jaewanyun.omoc.GameState;
+import com.jaewanyun.omoc.Symmetry;
+
+/**
+ * Mines finished games for the moves played in their first positions and writes them as an opening book
+ * Positions that are symmetric to each other are counted as one, with the move mapped into the canonical orientation
+ * Only games played with the settings of the book are counted
+ */
+public class OpeningBookBuilder {
+
+	private final GameSettings settings;
+	private final int depth;
+	private final HashMap<Key, int[]> stats; // games, wins
+
+	/**
+	 * @param settings Settings of the games the book is for
+	 * @param depth Number of moves from the start of each game to count
+	 */
+	public OpeningBookBuilder(GameSettings settings, int depth) {
+		this.settings = settings;
+		this.depth = depth;
+		stats = new HashMap<>();
+	}
+
+	/**
+	 * @param block A block read with at least the SETTINGS, RESULT and MOVES columns
+	 */
+	public void add(GameArchive.Block block) {
+		for(int j = 0; j < block.gameCount; j++) {
+			if(block.width[j] != settings.gridWidth || block.height[j] != settings.gridHeight
+					|| block.stonesPerTurn[j] != settings.stonesPerTurn || block.stonesToWin[j] != settings.stonesToWin)
+				continue;
+			add(block.winner[j], block.moveX, block.moveY, block.moveColor, block.moveStart[j], block.moveCount(j));
+		}
+	}
+
+	/*
+	 * Counts the moves of one game until the depth of the book or the first move that is not an ordinary placement,
+	 * e.g. a stone deleted or placed out of turn
+	 */
+	private void add(int winner, short[] xs, short[] ys, byte[] colors, int start, int count) {
+		Board board = new Board(settings);
+		for(int m = 0; m < Math.min(depth, count); m++) {
+			int x = xs[start + m];
+			int y = ys[start + m];
+			int color = colors[start + m];
+			if(x >= board.width() || y >= board.height() || board.get(x, y) != GameState.BLANK || color != board.whosTurn())
+				return;
+
+			int cell = Symmetry.apply(board.canonicalTransform(), x, y, board.width(), board.height());
+			int[] counts = stats.computeIfAbsent(new Key(board.canonicalHash(), cell), key -> new int[2]);
+			counts[0]++;
+			if(color == winner)
+				counts[1]++;
+
+			board.makeMove(x, y);
+		}
+	}
+
+	/**
+	 * @return Number of distinct moves counted so far
+	 */
+	public int size() {
+		return stats.size();
+	}
+
+	/**
+	 * Writes the book sorted by position, with the moves of a position from most to least played
+	 * The file is written beside the target and moved into place so that readers never map a partial book
+	 *
+	 * @param path File of the book; an existing file is replaced
+	 * @param minGames Moves played in fewer games are left out
+	 * @throws IOException When the book cannot be written
+	 */
+	public void write(Path path, int minGames) throws IOException {
+		ArrayList<Map.Entry<Key, int[]>> entries = new ArrayList<>();
+		for(Map.Entry<Key, int[]> entry : stats.entrySet()) {
+			if(entry.getValue()[0] >= minGames)
+				entries.add(entry);
+		}
+		entries.sort((a, b) -> {
+			int compare = Long.compare(a.getKey().hash, b.getKey().hash);
+			return compare != 0 ? compare : Integer.compare(b.getValue()[0], a.getValue()[0]);
+		});
+
+		ByteBuffer buffer = ByteBuffer.allocate(OpeningBook.HEADER_SIZE + entries.size() * OpeningBook.ENTRY_SIZE);
+		buffer.putInt(OpeningBook.MAGIC);
+		buffer.putInt(settings.gridWidth);
+		buffer.putInt(settings.gridHeight);
+		buffer.putInt(settings.stonesPerTurn);
+		buffer.putInt(settings.stonesToWin);
+		buffer.putInt(depth);
+		buffer.putInt(entries.size());
+		buffer.putInt(0);
+		for(Map.Entry<Key, int[]> entry : entries) {
+			buffer.putLong(entry.getKey().hash);
+			buffer.putShort((short) Symmetry.cellX(entry.getKey().cell));
+			buffer.putShort((short) Symmetry.cellY(entry.getKey().cell));
+			buffer.putInt(entry.getValue()[0]);
+			buffer.putInt(entry.getValue()[1]);
+			buffer.putInt(0);
+		}
+		buffer.flip();
+
+		Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+		try(FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			while(buffer.hasRemaining())
+				channel.write(buffer);
+			channel.force(true);
+		}
+		Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/*
+	 * A canonical position and a move from it
+	 */
+	private static final class Key {
+		private final long hash;
+		private final int cell;
+
+		private Key(long hash, int cell) {
+			this.hash = hash;
+			this.cell = cell;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Key && ((Key) other).hash == hash && ((Key) other).cell == cell;
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(hash) * 31 + cell;
+		}
+	}
+}
@@ -0,0 +1,395 @@
+package com.jaewanyun.omoc.store;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+
+import com.jaewanyun.omoc.Board;
+import com.jaewanyun.omoc.BoardSnapshot;
+import com.jaewanyun.omoc.GameSettings;
+import com.jaewanyun.omoc.GameState;
+import com.jaewanyun.omoc.net.Server;
+import com.jaewanyun.omoc.net.ServerListener;
+
+/**
+ * Keeps the authoritative games of a server recoverable across a crash
+ * Every relayed game state is journaled by a thread of its own, and the latest state of every game is checkpointed periodically
+ * On restart the checkpoint is loaded and only the moves journaled after it are replayed
+ *
+ * Checkpoint layout: magic, time, then per game its id, journal file, journaled moves, settings, turn counter and packed cells
+ * Sessions do not outlive a restart, so no connection is checkpointed; checkpoints of the first layout also listed the
+ * connection ids after the time, which are skipped
+ */
+public class ServerStateStore implements ServerListener, Closeable {
+
+	private static final int MAGIC = 0x4F4D4332; // OMC2
+	private static final int MAGIC_WITH_CONNECTIONS = 0x4F4D4331; // OMC1
+	private static final String CHECKPOINT = "checkpoint.omc";
+	private final Path directory;
+	private final long checkpointMillis;
+	private final GameRecorder recorder;
+	private final LinkedHashMap<Integer, GameState> unrecorded; // Latest state of each game not yet journaled; guarded by itself
+	private final LinkedHashSet<Integer> ended; // Games whose sessions ended, closed once their states are journaled; guarded by unrecorded
+	private boolean closing; // Guarded by unrecorded
+	private volatile Server server;
+	private volatile GameState latest; // Most recently updated game
+	private Thread checkpointer;
+	private Thread journaler;
+
+	/**
+	 * @param directory Directory holding the checkpoint and the journals
+	 * @param checkpointMillis Time between checkpoints
+	 * @throws IOException When the directory cannot be created
+	 */
+	public ServerStateStore(Path directory, long checkpointMillis) throws IOException {
+		this.directory = Files.createDirectories(directory);
+		this.checkpointMillis = checkpointMillis;
+		recorder = new GameRecorder(directory);
+		unrecorded = new LinkedHashMap<>();
+		ended = new LinkedHashSet<>();
+	}
+
+	/**
+	 * Restores every game in progress from the last checkpoint and the journals written since
+	 * Games already won or left idle longer than GameRecorder.IDLE_MILLIS are not reopened
+	 * Must be called before attach
+	 *
+	 * @return The number of games recovered
+	 * @throws IOException When the checkpoint or a journal cannot be read
+	 */
+	public synchronized int recover() throws IOException {
+		long start = System.nanoTime();
+		HashMap<Integer, Candidate> candidates = new HashMap<>();
+		long checkpointTime = 0;
+
+		/*
+		 * Games as of the last checkpoint
+		 */
+		Path checkpoint = directory.resolve(CHECKPOINT);
+		if(Files.exists(checkpoint)) {
+			try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(checkpoint)))) {
+				int magic = in.readInt();
+				if(magic != MAGIC && magic != MAGIC_WITH_CONNECTIONS)
+					throw new IOException("Not a checkpoint: " + checkpoint);
+				checkpointTime = in.readLong();
+
+				if(magic == MAGIC_WITH_CONNECTIONS) {
+					int connectionCount = in.readInt();
+					for(int j = 0; j < connectionCount; j++)
+						in.readInt();
+				}
+
+				int gameCount = in.readInt();
+				for(int j = 0; j < gameCount; j++) {
+					Candidate candidate = new Candidate();
+					candidate.gameId = in.readInt();
+					candidate.journal = directory.resolve(in.readUTF());
+					candidate.moves = in.readInt();
+					candidate.board = readBoard(in);
+					candidates.put(candidate.gameId, candidate);
+				}
+			}
+		}
+
+		/*
+		 * Games started after the checkpoint only exist in their journals
+		 */
+		try(DirectoryStream<Path> journals = Files.newDirectoryStream(directory, "*.omj")) {
+			for(Path journal : journals) {
+				MoveJournalReader reader;
+				try {
+					reader = new MoveJournalReader(journal);
+				} catch (IOException ioe) { // Created just before a crash, its header never written; it holds no moves
+					// TODO: Handle
+					System.out.println("Skipping journal: " + ioe.getMessage());
+					continue;
+				}
+				if(reader.created() < checkpointTime)
+					continue;
+				Candidate known = candidates.get(reader.gameId());
+				if(known != null && Files.exists(known.journal)
+						&& (known.journal.equals(journal) || known.created() > reader.created()))
+					continue;
+
+				Candidate candidate = new Candidate();
+				candidate.gameId = reader.gameId();
+				candidate.journal = journal;
+				candidate.moves = 0;
+				candidate.board = new Board(reader.settings());
+				candidate.reader = reader;
+				candidates.put(candidate.gameId, candidate);
+			}
+		}
+
+		/*
+		 * Replay what was journaled after the checkpoint
+		 */
+		int recovered = 0;
+		long replayed = 0;
+		long lastActivity = Long.MIN_VALUE;
+		long idleSince = System.currentTimeMillis() - GameRecorder.IDLE_MILLIS;
+		for(Candidate candidate : candidates.values()) {
+			Board board = candidate.board;
+			GameState gameState = new GameState(candidate.gameId, board);
+			long activity = checkpointTime;
+			if(Files.exists(candidate.journal)) {
+				MoveJournalReader reader = candidate.reader != null ? candidate.reader : new MoveJournalReader(candidate.journal);
+				for(int j = candidate.moves; j < reader.moveCount(); j++) {
+					board.set(reader.x(j), reader.y(j), reader.color(j));
+					board.setTurnCounter(reader.turnCounter(j));
+					replayed++;
+				}
+				activity = reader.moveCount() > 0 ? reader.timestamp(reader.moveCount() - 1) : reader.created();
+			}
+			if(board.checkStatus() != GameState.BLANK || activity < idleSince)
+				continue;
+			if(Files.exists(candidate.journal))
+				recorder.resume(candidate.journal, gameState);
+			recovered++;
+
+			if(activity >= lastActivity) {
+				lastActivity = activity;
+				latest = gameState;
+			}
+		}
+
+		System.out.println("Recovered " + recovered + " games (" + replayed + " journaled moves) in "
+				+ (System.nanoTime() - start) / 1000000 + " ms");
+		return recovered;
+	}
+
+	/**
+	 * Starts recording what the server relays and checkpointing periodically
+	 *
+	 * @param server The server to listen to
+	 */
+	public synchronized void attach(Server server) {
+		this.server = server;
+		server.setListener(this);
+
+		if(checkpointer == null) {
+			checkpointer = new Thread(() -> {
+				while(!Thread.currentThread().isInterrupted()) {
+					try {
+						Thread.sleep(checkpointMillis);
+						checkpoint();
+					} catch (InterruptedException ie) {
+						return;
+					} catch (IOException ioe) {
+						// TODO: Handle
+						System.out.println("Checkpoint failed: " + ioe.getMessage());
+					}
+				}
+			}, "checkpointer");
+			checkpointer.setDaemon(true);
+			checkpointer.start();
+		}
+
+		if(journaler == null) {
+			journaler = new Thread(this::journal, "journaler");
+			journaler.setDaemon(true);
+			journaler.start();
+		}
+	}
+
+	/*
+	 * Journals the states received, off the connection threads so that a group commit never delays a relayed message
+	 * States of a game that arrive faster than they are journaled are coalesced; the recorder diffs each against the last
+	 * one journaled, so the board stays whole
+	 */
+	private void journal() {
+		while(true) {
+			ArrayList<GameState> states;
+			ArrayList<Integer> finished;
+			synchronized(unrecorded) {
+				try {
+					while(unrecorded.isEmpty() && ended.isEmpty() && !closing)
+						unrecorded.wait();
+				} catch (InterruptedException ie) {
+					return;
+				}
+				if(unrecorded.isEmpty() && ended.isEmpty())
+					return;
+				states = new ArrayList<>(unrecorded.values());
+				unrecorded.clear();
+				finished = new ArrayList<>(ended);
+				ended.clear();
+			}
+
+			for(GameState gameState : states) {
+				try {
+					recorder.record(gameState);
+				} catch (IOException ioe) {
+					// TODO: Handle
+					System.out.println("Could not journal game: " + gameState.getID());
+				}
+			}
+
+			// After their last states, so that a game is not reopened by a state still queued
+			for(Integer gameId : finished) {
+				try {
+					recorder.finish(gameId);
+				} catch (IOException ioe) {
+					// TODO: Handle
+					System.out.println("Could not close journal of game: " + gameId);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the latest state of every game to a new checkpoint and replaces the old one atomically
+	 *
+	 * @throws IOException When the checkpoint cannot be written
+	 */
+	public void checkpoint() throws IOException {
+		// Journals created after this time are replayed in full on recovery
+		long time = System.currentTimeMillis();
+		// Commits the journals first so that every move counted here is on disk
+		GameRecorder.Position[] positions = recorder.positions();
+
+		Path temporary = directory.resolve(CHECKPOINT + ".tmp");
+		try(FileOutputStream file = new FileOutputStream(temporary.toFile())) {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+			out.writeInt(MAGIC);
+			out.writeLong(time);
+			out.writeInt(positions.length);
+			for(GameRecorder.Position position : positions) {
+				out.writeInt(position.gameId);
+				out.writeUTF(position.journal.getFileName().toString());
+				out.writeInt(position.moves);
+				writeBoard(out, position.board);
+			}
+			out.flush();
+			file.getFD().sync();
+		}
+		Files.move(temporary, directory.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/*
+	 * Brings a new connection up to date with the most recently played game
+	 */
+	@Override
+	public void connected(int id) {
+		GameState current = latest;
+		Server target = server;
+		if(current != null && target != null)
+			target.send(id, current);
+	}
+
+	@Override
+	public void received(int id, Object message) {
+		if(!(message instanceof GameState))
+			return;
+
+		GameState gameState = (GameState) message;
+		latest = gameState;
+		synchronized(unrecorded) {
+			unrecorded.put(gameState.getID(), gameState);
+			unrecorded.notifyAll();
+		}
+	}
+
+	/*
+	 * A game is played under the ID of the client that started it, so its journal is closed with the session
+	 */
+	@Override
+	public void disconnected(int id) {
+		synchronized(unrecorded) {
+			ended.add(id);
+			unrecorded.notifyAll();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		Thread current;
+		Thread draining;
+		synchronized(this) {
+			current = checkpointer;
+			checkpointer = null;
+			draining = journaler;
+		}
+		if(current != null)
+			current.interrupt();
+
+		// Every state received is journaled before the last checkpoint
+		synchronized(unrecorded) {
+			closing = true;
+			unrecorded.notifyAll();
+		}
+		if(draining != null) {
+			try {
+				draining.join();
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		checkpoint();
+		recorder.close();
+	}
+
+	private static void writeBoard(DataOutputStream out, BoardSnapshot board) throws IOException {
+		out.writeInt(board.width());
+		out.writeInt(board.height());
+		out.writeInt(board.stonesPerTurn());
+		out.writeInt(board.stonesToWin());
+		out.writeInt(board.secondsAllotted());
+		out.writeInt(board.turnCounter());
+		for(int j = 0; j < board.width(); j++)
+			for(int w = 0; w < board.wordsPerColumn(); w++)
+				out.writeLong(board.word(j, w));
+	}
+
+	private static Board readBoard(DataInputStream in) throws IOException {
+		GameSettings settings = new GameSettings();
+		settings.gridWidth = in.readInt();
+		settings.gridHeight = in.readInt();
+		settings.stonesPerTurn = in.readInt();
+		settings.stonesToWin = in.readInt();
+		settings.secondsAllotted = in.readInt();
+		int turnCounter = in.readInt();
+
+		Board board = new Board(settings);
+		int words = (settings.gridHeight + 31) / 32;
+		for(int j = 0; j < settings.gridWidth; j++) {
+			for(int w = 0; w < words; w++) {
+				long word = in.readLong();
+				for(int bit = 0; word != 0; bit++, word >>>= 2) {
+					int color = (int) word & 3;
+					if(color != GameState.BLANK)
+						board.set(j, w * 32 + bit, color);
+				}
+			}
+		}
+		board.setTurnCounter(turnCounter);
+		return board;
+	}
+
+	/*
+	 * A game found while recovering
+	 */
+	private static class Candidate {
+		private int gameId;
+		private Path journal;
+		private int moves; // Journaled moves already in the board
+		private Board board;
+		private MoveJournalReader reader;
+
+		private long created() throws IOException {
+			return (reader != null ? reader : new MoveJournalReader(journal)).created();
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package com.jaewanyun.omoc;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Moves made and taken back with undo records leave the board as it was
+ */
+public class BoardTest {
+
+	@Test
+	public void unmakeRestoresCellsTurnAndHash() {
+		Board board = new Board(new GameSettings());
+		long emptyHash = board.hash();
+		int[][] moves = {{3, 4}, {10, 10}, {0, 29}, {29, 0}, {15, 16}};
+		long[] undo = new long[moves.length];
+		long[] hashes = new long[moves.length];
+		int[] turns = new int[moves.length];
+		for(int j = 0; j < moves.length; j++) {
+			turns[j] = board.turnCounter();
+			undo[j] = board.makeMove(moves[j][0], moves[j][1]);
+			hashes[j] = board.hash();
+		}
+
+		for(int j = moves.length - 1; j >= 0; j--) {
+			assertEquals(hashes[j], board.hash());
+			board.unmakeMove(undo[j]);
+			assertEquals(GameState.BLANK, board.get(moves[j][0], moves[j][1]));
+			assertEquals(turns[j], board.turnCounter());
+		}
+		assertEquals(emptyHash, board.hash());
+	}
+
+	@Test
+	public void undoKeepsColumnsBeyondShortRange() {
+		GameSettings settings = new GameSettings();
+		settings.gridWidth = 0x8001;
+		settings.gridHeight = 2;
+		Board board = new Board(settings);
+
+		long undo = board.makeMove(0x8000, 1);
+		assertEquals(0x8000, GameState.undoX(undo));
+		assertEquals(1, GameState.undoY(undo));
+
+		board.unmakeMove(undo);
+		assertEquals(GameState.BLANK, board.get(0x8000, 1));
+		assertEquals(1, board.turnCounter());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void occupiedCellIsRefused() {
+		Board board = new Board(new GameSettings());
+		board.makeMove(5, 5);
+		board.makeMove(5, 5);
+	}
+}
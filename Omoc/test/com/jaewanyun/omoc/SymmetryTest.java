@@ -0,0 +1,82 @@
+package com.jaewanyun.omoc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+
+import org.junit.Test;
+
+/**
+ * Positions that are rotations or mirror images of each other share a canonical hash, kept up to date move by move
+ */
+public class SymmetryTest {
+
+	private static final int[][] MOVES = {{1, 2}, {7, 3}, {4, 4}, {0, 8}, {6, 1}};
+
+	@Test
+	public void symmetricPositionsShareCanonicalHash() {
+		GameSettings settings = settings(9, 9);
+		Board original = play(settings, -1);
+		for(int t = 0; t < Symmetry.COUNT; t++) {
+			Board image = play(settings, t);
+			assertEquals("transform " + t, original.canonicalHash(), image.canonicalHash());
+			assertEquals("transform " + t, image.canonicalHash(), Symmetry.canonicalHash(image.snapshot()));
+		}
+	}
+
+	@Test
+	public void rectangularBoardsOnlyUseMirrors() {
+		GameSettings settings = settings(9, 6);
+		Board original = play(settings, -1);
+		for(int t = 0; t < Symmetry.COUNT; t++) {
+			if(!Symmetry.applies(t, 9, 6))
+				continue;
+			assertEquals("transform " + t, original.canonicalHash(), play(settings, t).canonicalHash());
+		}
+		assertFalse(Symmetry.applies(Symmetry.SWAP, 9, 6));
+	}
+
+	@Test
+	public void unmakeRestoresCanonicalHash() {
+		Board board = play(settings(9, 9), -1);
+		long before = board.canonicalHash();
+		long undo = board.makeMove(8, 8);
+		assertNotEquals(before, board.canonicalHash());
+		board.unmakeMove(undo);
+		assertEquals(before, board.canonicalHash());
+	}
+
+	@Test
+	public void inverseUndoesEachTransform() {
+		for(int t = 0; t < Symmetry.COUNT; t++) {
+			assertEquals(Symmetry.IDENTITY, Symmetry.compose(Symmetry.inverse(t), t));
+			int cell = Symmetry.apply(t, 2, 5, 9, 9);
+			assertEquals(Symmetry.cell(2, 5), Symmetry.toOriginal(t, cell, 9, 9));
+		}
+	}
+
+	private static GameSettings settings(int width, int height) {
+		GameSettings settings = new GameSettings();
+		settings.gridWidth = width;
+		settings.gridHeight = height;
+		return settings;
+	}
+
+	/*
+	 * Plays the same moves, mapped under transform t unless t is negative
+	 */
+	private static Board play(GameSettings settings, int t) {
+		Board board = new Board(settings);
+		for(int[] move : MOVES) {
+			int x = move[0] % settings.gridWidth;
+			int y = move[1] % settings.gridHeight;
+			if(t >= 0) {
+				int cell = Symmetry.apply(t, x, y, settings.gridWidth, settings.gridHeight);
+				x = Symmetry.cellX(cell);
+				y = Symmetry.cellY(cell);
+			}
+			board.makeMove(x, y);
+		}
+		return board;
+	}
+}
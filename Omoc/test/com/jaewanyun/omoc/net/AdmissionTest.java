@@ -0,0 +1,108 @@
+package com.jaewanyun.omoc.net;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Jaewan Yun <jay50@pitt.edu>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+/**
+ * A server takes on connections no faster than its accept rate and turns away those beyond its maximum
+ *
+ * @author Jaewan Yun <jay50@pitt.edu>
+ */
+public class AdmissionTest {
+
+	private static final AtomicInteger names = new AtomicInteger();
+
+	private Server server;
+	private final List<Client> clients = new ArrayList<>();
+
+	@After
+	public void tearDown() {
+		for(Client client : clients)
+			client.close();
+		if(server != null)
+			server.shutdown();
+	}
+
+	@Test(timeout = 10000)
+	public void connectionsBeyondTheMaximumAreTurnedAway() throws InterruptedException {
+		Transport transport = start(new Admission(1, 1000, 100, 16));
+		Client first = connect(transport);
+		await(first);
+
+		Counter rejected = Metrics.shared().counter("server." + transport.name() + ".rejected.full");
+		Client second = connect(transport);
+		while(rejected.get() == 0)
+			Thread.sleep(5);
+		assertFalse(second.isConnected());
+		assertTrue(first.isConnected());
+	}
+
+	@Test(timeout = 10000)
+	public void acceptsBeyondTheBurstWaitForTheRate() throws InterruptedException {
+		Transport transport = start(new Admission(10, 5, 1, 16));
+		long start = System.nanoTime();
+		for(int j = 0; j < 3; j++)
+			connect(transport);
+		for(Client client : clients)
+			await(client);
+
+		// Two connections beyond the burst at five a second
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(300));
+		assertEquals(2, Metrics.shared().counter("server." + transport.name() + ".accept.throttled").get());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void limitsMustBePositive() {
+		new Admission(10, 0, 1, 16);
+	}
+
+	private Transport start(Admission admission) {
+		Transport transport = new LoopbackTransport("admission" + names.incrementAndGet());
+		server = Server.getServer(transport, false, admission, 1);
+		return transport;
+	}
+
+	private Client connect(Transport transport) {
+		Client client = new Client(transport, false);
+		clients.add(client);
+		client.tether(new JayList<>());
+		return client;
+	}
+
+	private static void await(Client client) throws InterruptedException {
+		while(!client.isConnected())
+			Thread.sleep(5);
+	}
+}
@@ -0,0 +1,228 @@
+package com.jaewanyun.omoc.net;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Field;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Jaewan Yun <jay50@pitt.edu>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+/**
+ * Clients and a server talking in process: chat, requests and a session resumed after its connection is dropped
+ *
+ * @author Jaewan Yun <jay50@pitt.edu>
+ */
+public class LoopbackTransportTest {
+
+	private static final AtomicInteger names = new AtomicInteger();
+
+	private Transport transport;
+	private Server server;
+	private final List<Client> clients = new ArrayList<>();
+
+	@Before
+	public void setUp() {
+		transport = new LoopbackTransport("test" + names.incrementAndGet());
+		server = Server.getServer(transport, false, Admission.DEFAULT, 1);
+	}
+
+	@After
+	public void tearDown() {
+		for(Client client : clients)
+			client.close();
+		server.shutdown();
+	}
+
+	@Test(timeout = 10000)
+	public void chatReachesTheOtherClient() throws InterruptedException {
+		Client a = connect(new JayList<>());
+		JayList<Object> bIn = new JayList<>();
+		connect(bIn);
+
+		assertTrue(a.offer("hello"));
+		assertEquals(Arrays.asList("hello"), receive(bIn, 1));
+	}
+
+	@Test(timeout = 10000)
+	public void requestsAreAnswered() throws Exception {
+		Client a = connect(new JayList<>());
+		Client b = connect(new JayList<>());
+
+		Integer[] ids = a.requestIds().get(5, TimeUnit.SECONDS);
+		Arrays.sort(ids);
+		Integer[] expected = {a.id(), b.id()};
+		Arrays.sort(expected);
+		assertArrayEquals(expected, ids);
+
+		try {
+			a.request("nonexistent").get(5, TimeUnit.SECONDS);
+			fail();
+		} catch(ExecutionException ee) {
+			assertTrue(ee.getCause().getMessage().contains("nonexistent"));
+		}
+		assertEquals(0, a.pendingRequests());
+	}
+
+	@Test(timeout = 10000)
+	public void droppedConnectionResumesItsSession() throws Exception {
+		Client a = connect(new JayList<>());
+		JayList<Object> bIn = new JayList<>();
+		Client b = connect(bIn);
+		int id = b.id();
+		a.offer("before");
+		assertEquals(Arrays.asList("before"), receive(bIn, 1));
+		long resumes = Metrics.shared().counter("client.resumes").get();
+
+		Field socket = Client.class.getDeclaredField("socket");
+		socket.setAccessible(true);
+		((Transport.Link) socket.get(b)).close();
+		for(int j = 0; j < 5; j++)
+			a.offer("during" + j);
+
+		assertEquals(Arrays.asList("during0", "during1", "during2", "during3", "during4"), receive(bIn, 5));
+		await(() -> b.isConnected());
+		assertEquals(id, b.id());
+		assertTrue(Metrics.shared().counter("client.resumes").get() > resumes);
+	}
+
+	@Test(timeout = 10000)
+	public void resumingOverALiveConnectionKeepsOneId() throws Exception {
+		Transport.Link first = transport.connect();
+		Session session = hello(first, new Hello(0, -1));
+		Transport.Link second = transport.connect();
+		Session resumed = hello(second, new Hello(session.token(), -1));
+		assertTrue(resumed.resumed());
+		assertEquals(session.id(), resumed.id());
+
+		// The old connection is aborted and cleans up after the new one has taken its id over
+		await(() -> {
+			try {
+				return first.input().read() == -1;
+			} catch(IOException ioe) {
+				return true;
+			}
+		});
+		Thread.sleep(100);
+		assertEquals(1, Arrays.stream(server.getId()).filter(id -> id == session.id()).count());
+
+		second.close();
+		await(() -> !Arrays.asList(server.getId()).contains(session.id()));
+		first.close();
+	}
+
+	@Test(timeout = 10000)
+	public void shutdownRemovesTheMetricsOfTheServer() throws InterruptedException {
+		connect(new JayList<>());
+		String prefix = "server." + transport.name() + ".";
+		assertTrue(Metrics.shared().dump().contains(prefix));
+
+		server.shutdown();
+		assertFalse(Metrics.shared().dump().contains(prefix));
+	}
+
+	@Test(timeout = 10000)
+	public void commandThroughARelayKeepsItsSender() throws InterruptedException {
+		JayList<Object> upstreamIn = new JayList<>();
+		connect(upstreamIn);
+		Transport relayTransport = new LoopbackTransport("relay" + names.incrementAndGet());
+		Server relay = Server.getRelay(relayTransport, transport, false);
+		try {
+			Client viewer = new Client(relayTransport, false);
+			clients.add(viewer);
+			JayList<Object> viewerIn = new JayList<>();
+			viewer.tether(viewerIn);
+			await(() -> viewer.isConnected() && viewer.id() != -1);
+
+			viewer.offer(new Command("name", new String[] {"viewer"}, viewer.id(), null));
+			Command received = (Command) receive(upstreamIn, 1).get(0);
+			assertEquals(viewer.id(), received.sender());
+			assertEquals("name", received.name());
+		} finally {
+			relay.shutdown();
+		}
+	}
+
+	@Test
+	public void connectingToNothingIsRefused() throws IOException {
+		try {
+			new LoopbackTransport("unbound" + names.incrementAndGet()).connect();
+			fail();
+		} catch(ConnectException ce) {
+			// Expected
+		}
+	}
+
+	private static Session hello(Transport.Link link, Hello hello) throws IOException, ClassNotFoundException {
+		ObjectOutputStream out = StreamUtil.openOutputStream(link, false, null);
+		out.writeObject(hello);
+		out.flush();
+		ObjectInputStream in = StreamUtil.openInputStream(link, false, null);
+		Object reply = in.readObject();
+		while(reply instanceof Heartbeat)
+			reply = in.readObject();
+		return (Session) reply;
+	}
+
+	private Client connect(JayList<Object> inQueue) throws InterruptedException {
+		Client client = new Client(transport, false);
+		clients.add(client);
+		client.tether(inQueue);
+		await(() -> client.isConnected() && client.id() != -1);
+		return client;
+	}
+
+	private static List<Object> receive(JayList<Object> inQueue, int count) throws InterruptedException {
+		List<Object> received = new ArrayList<>();
+		while(received.size() < count) {
+			if(inQueue.isEmpty())
+				Thread.sleep(5);
+			else
+				received.add(inQueue.removeFirst());
+		}
+		return received;
+	}
+
+	private static void await(BooleanSupplier condition) throws InterruptedException {
+		while(!condition.getAsBoolean())
+			Thread.sleep(5);
+	}
+}
@@ -0,0 +1,130 @@
+package com.jaewanyun.omoc.net;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.jaewanyun.omoc.GameState;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Jaewan Yun <jay50@pitt.edu>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+/**
+ * Queued states are coalesced by identity and a full queue pushes back on its producers
+ *
+ * @author Jaewan Yun <jay50@pitt.edu>
+ */
+public class SendQueueTest {
+
+	private final Counter coalesced = new Counter();
+	private final Counter rejected = new Counter();
+
+	@Test
+	public void newerStateReplacesPendingStateAtTheBack() throws InterruptedException {
+		SendQueue queue = new SendQueue(8, coalesced, rejected);
+		GameState first = new GameState(1);
+		GameState second = new GameState(1);
+		assertTrue(queue.offer(first));
+		assertTrue(queue.offer("hello"));
+		assertTrue(queue.offer(second));
+
+		assertEquals(2, queue.size());
+		assertEquals(1, coalesced.get());
+		assertEquals("hello", queue.take());
+		assertSame(second, queue.take());
+	}
+
+	@Test
+	public void takenStateIsNotReplaced() throws InterruptedException {
+		SendQueue queue = new SendQueue(8, coalesced, rejected);
+		GameState first = new GameState(1);
+		queue.offer(first);
+		assertSame(first, queue.take());
+
+		GameState second = new GameState(1);
+		queue.offer(second);
+		assertEquals(0, coalesced.get());
+		assertSame(second, queue.take());
+	}
+
+	@Test
+	public void messagesAreNeverCoalesced() {
+		SendQueue queue = new SendQueue(8, coalesced, rejected);
+		queue.offer("hello");
+		queue.offer("hello");
+		queue.offer(new Command("move", new String[] {"3", "4"}, 1, "a"));
+		queue.offer(new Command("move", new String[] {"3", "4"}, 1, "a"));
+
+		assertEquals(4, queue.size());
+		assertEquals(0, coalesced.get());
+	}
+
+	@Test
+	public void fullQueueRefusesMessagesButTakesStates() {
+		SendQueue queue = new SendQueue(2, coalesced, rejected);
+		assertTrue(queue.offer(new GameState(1)));
+		assertTrue(queue.offer("hello"));
+
+		assertFalse(queue.offer("again"));
+		assertEquals(1, rejected.get());
+		assertTrue(queue.offer(new GameState(1)));
+		assertEquals(2, queue.size());
+	}
+
+	@Test
+	public void closedQueueRefusesAndReleasesTakers() throws InterruptedException {
+		SendQueue queue = new SendQueue(2, coalesced, rejected);
+		queue.offer("hello");
+		queue.close();
+
+		assertNull(queue.take());
+		assertFalse(queue.offer("again"));
+		assertEquals(1, rejected.get());
+	}
+
+	@Test(timeout = 5000)
+	public void putWaitsForRoom() throws InterruptedException {
+		SendQueue queue = new SendQueue(1, coalesced, rejected);
+		queue.offer("first");
+		Thread producer = new Thread(() -> {
+			try {
+				queue.put("second");
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		producer.start();
+
+		while(producer.getState() != Thread.State.WAITING)
+			Thread.sleep(1);
+		assertEquals(1, queue.size());
+		assertEquals("first", queue.take());
+		producer.join();
+		assertEquals("second", queue.take());
+		assertEquals(0, rejected.get());
+	}
+}
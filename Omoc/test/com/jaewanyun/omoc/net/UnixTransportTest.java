@@ -0,0 +1,75 @@
+package com.jaewanyun.omoc.net;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Jaewan Yun <jay50@pitt.edu>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+/**
+ * Unix domain socket addresses are named by their whole path and are never bound over another file
+ *
+ * @author Jaewan Yun <jay50@pitt.edu>
+ */
+public class UnixTransportTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void socketsOfTheSameNameInOtherDirectoriesAreOtherAddresses() throws IOException {
+		Path first = folder.newFolder("first").toPath().resolve("omoc.sock");
+		Path second = folder.newFolder("second").toPath().resolve("omoc.sock");
+		assertNotEquals(new UnixTransport(first).name(), new UnixTransport(second).name());
+	}
+
+	@Test
+	public void relativeAndAbsolutePathsAreTheSameAddress() {
+		Path relative = Paths.get("sockets", "..", "omoc.sock");
+		assertEquals(new UnixTransport(relative.toAbsolutePath()).name(), new UnixTransport(relative).name());
+		assertEquals(new UnixTransport(Paths.get("omoc.sock")).name(), new UnixTransport(relative).name());
+	}
+
+	@Test
+	public void regularFileIsNotReplaced() throws IOException {
+		Path path = folder.newFile("omoc.sock").toPath();
+		try {
+			new UnixTransport(path).listen(1, 1);
+			fail();
+		} catch (IOException ioe) {
+			assertTrue(ioe.getMessage().startsWith("Not a socket"));
+		}
+		assertTrue(Files.isRegularFile(path));
+	}
+}
@@ -0,0 +1,97 @@
+package com.jaewanyun.omoc.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.jaewanyun.omoc.GameSettings;
+import com.jaewanyun.omoc.GameState;
+
+/**
+ * Games packed into an archive are read back column by column, and a damaged column is reported rather than read
+ */
+public class GameArchiveTest {
+
+	private static final short[] XS = {3, 4, 3, 5, 3};
+	private static final short[] YS = {3, 3, 4, 5, 5};
+	private static final byte[] COLORS = {GameState.WHITE, GameState.BLACK, GameState.WHITE, GameState.BLACK, GameState.WHITE};
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void gamesAreReadBack() throws IOException {
+		Path path = write();
+		try(GameArchiveReader reader = new GameArchiveReader(path)) {
+			assertEquals(2, reader.gameCount());
+			GameArchive.Block block = reader.readBlock(0, GameArchive.ALL);
+			assertEquals(GameState.WHITE, block.winner[0]);
+			assertEquals(1500, block.duration[1]);
+			assertEquals(XS.length, block.moveCount(1));
+			for(int j = 0; j < XS.length; j++) {
+				assertEquals(XS[j], block.moveX[block.moveStart[1] + j]);
+				assertEquals(YS[j], block.moveY[block.moveStart[1] + j]);
+				assertEquals(COLORS[j], block.moveColor[block.moveStart[1] + j]);
+			}
+		}
+	}
+
+	@Test(timeout = 5000)
+	public void truncatedColumnIsReported() throws IOException {
+		Path path = write();
+
+		// Block: game count, then the raw and compressed length of each column; the moves column is the last
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			ByteBuffer length = ByteBuffer.allocate(4);
+			long position = 4 + (GameArchive.COLUMN_COUNT - 1) * 8 + 4;
+			channel.read(length, position);
+			length.putInt(0, length.getInt(0) / 2);
+			length.rewind();
+			channel.write(length, position);
+		}
+
+		try(GameArchiveReader reader = new GameArchiveReader(path)) {
+			reader.readBlock(0, GameArchive.MOVES);
+			fail();
+		} catch (IOException ioe) {
+			assertEquals("Truncated block", ioe.getMessage());
+		}
+	}
+
+	@Test
+	public void packSkipsGamesInProgress() throws Exception {
+		Path journals = folder.newFolder("journals").toPath();
+		try(MoveJournal won = MoveJournal.create(journals.resolve("1.omj"), 1, new GameSettings());
+				MoveJournal playing = MoveJournal.create(journals.resolve("2.omj"), 2, new GameSettings())) {
+			for(int j = 0; j < 5; j++) {
+				won.append(3 + j, 3, GameState.WHITE, j + 1);
+				playing.append(3 + j, 3, j % 2 == 0 ? GameState.WHITE : GameState.BLACK, j + 1);
+			}
+		}
+
+		Path archive = folder.getRoot().toPath().resolve("packed.oma");
+		ArchiveTool.main(new String[] {"pack", journals.toString(), archive.toString()});
+		try(GameArchiveReader reader = new GameArchiveReader(archive)) {
+			assertEquals(1, reader.gameCount());
+			assertEquals(GameState.WHITE, reader.readBlock(0, GameArchive.RESULT).winner[0]);
+		}
+	}
+
+	private Path write() throws IOException {
+		Path path = folder.getRoot().toPath().resolve("games.oma");
+		try(GameArchiveWriter writer = new GameArchiveWriter(path)) {
+			writer.add(new GameSettings(), GameState.WHITE, 1000, XS, YS, COLORS);
+			writer.add(new GameSettings(), GameState.BLANK, 1500, XS, YS, COLORS);
+		}
+		return path;
+	}
+}
@@ -0,0 +1,89 @@
+package com.jaewanyun.omoc.store;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.jaewanyun.omoc.Board;
+import com.jaewanyun.omoc.GameSettings;
+import com.jaewanyun.omoc.GameState;
+
+/**
+ * Only games in progress keep their journals open
+ */
+public class GameRecorderTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void wonGameIsClosedAndNotReopened() throws IOException {
+		Board board = new Board(new GameSettings());
+		GameState gameState = new GameState(5, board);
+		try(GameRecorder recorder = new GameRecorder(folder.getRoot().toPath())) {
+			for(int j = 0; j < 5; j++) {
+				board.set(3 + j, 3, GameState.WHITE);
+				recorder.record(gameState);
+			}
+			assertEquals(0, recorder.positions().length);
+
+			recorder.record(gameState);
+			assertEquals(0, recorder.positions().length);
+		}
+
+		List<Path> journals = journals();
+		assertEquals(1, journals.size());
+		assertEquals(5, new MoveJournalReader(journals.get(0)).moveCount());
+	}
+
+	@Test
+	public void finishedGameStartsANewJournal() throws Exception {
+		Board board = new Board(new GameSettings());
+		GameState gameState = new GameState(5, board);
+		try(GameRecorder recorder = new GameRecorder(folder.getRoot().toPath())) {
+			board.set(3, 3, GameState.WHITE);
+			recorder.record(gameState);
+			assertEquals(1, recorder.positions().length);
+
+			recorder.finish(5);
+			assertEquals(0, recorder.positions().length);
+
+			Thread.sleep(5); // Journals are named by the time they are created
+			board.set(4, 3, GameState.BLACK);
+			recorder.record(gameState);
+			assertEquals(1, recorder.positions().length);
+		}
+		assertEquals(2, journals().size());
+	}
+
+	@Test(timeout = 5000)
+	public void idleGameIsClosed() throws Exception {
+		Board board = new Board(new GameSettings());
+		try(GameRecorder recorder = new GameRecorder(folder.getRoot().toPath(), 50)) {
+			board.set(3, 3, GameState.WHITE);
+			recorder.record(new GameState(5, board));
+			assertEquals(1, recorder.positions().length);
+
+			while(recorder.positions().length != 0)
+				Thread.sleep(10);
+		}
+	}
+
+	private List<Path> journals() throws IOException {
+		List<Path> journals = new ArrayList<>();
+		try(DirectoryStream<Path> stream = Files.newDirectoryStream(folder.getRoot().toPath(), "*.omj")) {
+			for(Path journal : stream)
+				journals.add(journal);
+		}
+		return journals;
+	}
+}
@@ -0,0 +1,99 @@
+package com.jaewanyun.omoc.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.jaewanyun.omoc.Board;
+import com.jaewanyun.omoc.GameSettings;
+import com.jaewanyun.omoc.GameState;
+
+/**
+ * Moves appended to a journal are read back and replayed as they were played
+ */
+public class MoveJournalTest {
+
+	private static final int[][] MOVES = {{3, 4}, {4, 4}, {3, 5}, {10, 2}, {3, 6}};
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void roundTrip() throws IOException {
+		Path path = folder.getRoot().toPath().resolve("game.omj");
+		Board board = new Board(new GameSettings());
+		try(MoveJournal journal = MoveJournal.create(path, 42, board.settings())) {
+			append(journal, board, MOVES);
+		}
+
+		MoveJournalReader reader = new MoveJournalReader(path);
+		assertEquals(42, reader.gameId());
+		assertEquals(board.width(), reader.settings().gridWidth);
+		assertEquals(MOVES.length, reader.moveCount());
+		for(int j = 0; j < MOVES.length; j++) {
+			assertEquals(j, reader.sequence(j));
+			assertEquals(MOVES[j][0], reader.x(j));
+			assertEquals(MOVES[j][1], reader.y(j));
+			assertEquals(board.get(MOVES[j][0], MOVES[j][1]), reader.color(j));
+		}
+
+		GameState replayed = reader.replay();
+		for(int[] move : MOVES)
+			assertEquals(board.get(move[0], move[1]), replayed.getBoard(move[0], move[1]));
+		assertEquals(board.hash(), replayed.hash());
+		assertEquals(board.turnCounter(), replayed.copyBoard().turnCounter());
+		assertEquals(GameState.BLANK, reader.replay(2).getBoard(MOVES[2][0], MOVES[2][1]));
+	}
+
+	@Test
+	public void reopenCutsPartialRecordAndAppends() throws IOException {
+		Path path = folder.getRoot().toPath().resolve("torn.omj");
+		Board board = new Board(new GameSettings());
+		try(MoveJournal journal = MoveJournal.create(path, 7, board.settings())) {
+			append(journal, board, new int[][] {MOVES[0], MOVES[1], MOVES[2]});
+		}
+		Files.write(path, new byte[MoveJournal.RECORD_SIZE / 2], StandardOpenOption.APPEND); // A write cut short
+
+		try(MoveJournal journal = MoveJournal.reopen(path)) {
+			assertEquals(3, journal.size());
+			append(journal, board, new int[][] {MOVES[3]});
+		}
+
+		MoveJournalReader reader = new MoveJournalReader(path);
+		assertEquals(4, reader.moveCount());
+		assertEquals(3, reader.sequence(3));
+		assertEquals(MOVES[3][0], reader.x(3));
+	}
+
+	@Test
+	public void groupIsCommittedWhenDue() throws Exception {
+		Path path = folder.getRoot().toPath().resolve("due.omj");
+		Board board = new Board(new GameSettings());
+		try(MoveJournal journal = MoveJournal.create(path, 1, board.settings())) {
+			assertEquals(Long.MAX_VALUE, journal.commitIfDue());
+			append(journal, board, new int[][] {MOVES[0]});
+			long due = journal.commitIfDue();
+			assertTrue(due > 0 && due != Long.MAX_VALUE);
+			assertEquals(MoveJournal.HEADER_SIZE, Files.size(path));
+
+			Thread.sleep(due / 1000000 + 1);
+			assertEquals(Long.MAX_VALUE, journal.commitIfDue());
+			assertEquals(MoveJournal.HEADER_SIZE + MoveJournal.RECORD_SIZE, Files.size(path));
+		}
+	}
+
+	private static void append(MoveJournal journal, Board board, int[][] moves) throws IOException {
+		for(int[] move : moves) {
+			board.makeMove(move[0], move[1]);
+			journal.append(move[0], move[1], board.get(move[0], move[1]), board.turnCounter());
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package com.jaewanyun.omoc.store;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.jaewanyun.omoc.Board;
+import com.jaewanyun.omoc.GameSettings;
+import com.jaewanyun.omoc.GameState;
+import com.jaewanyun.omoc.net.Admission;
+import com.jaewanyun.omoc.net.Client;
+import com.jaewanyun.omoc.net.JayList;
+import com.jaewanyun.omoc.net.LoopbackTransport;
+import com.jaewanyun.omoc.net.Server;
+
+/**
+ * Games come back after a crash from the last checkpoint and the moves journaled after it
+ */
+public class ServerStateStoreTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test(timeout = 10000)
+	public void checkpointAndJournalAreReplayed() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		Server before = Server.getServer(new LoopbackTransport("store-before"), false, Admission.DEFAULT, 1);
+		ServerStateStore crashed = new ServerStateStore(directory, Long.MAX_VALUE);
+		crashed.attach(before);
+
+		Board other = new Board(new GameSettings());
+		other.set(1, 1, GameState.BLACK);
+		crashed.received(8, new GameState(8, other));
+		awaitMoves(directory, 8, 1);
+
+		Board board = new Board(new GameSettings());
+		int[][] moves = {{3, 3, GameState.WHITE}, {4, 3, GameState.BLACK}, {3, 4, GameState.WHITE}, {5, 5, GameState.BLACK}};
+		play(crashed, board, moves[0], moves[1]);
+		awaitMoves(directory, 7, 2);
+		crashed.checkpoint();
+		Thread.sleep(5); // The most recently played game is told apart by the time of its last move
+		play(crashed, board, moves[2], moves[3]);
+		awaitMoves(directory, 7, 4);
+		before.shutdown(); // Nothing is closed cleanly, as in a crash
+
+		Server after = Server.getServer(new LoopbackTransport("store-after"), false, Admission.DEFAULT, 1);
+		try(ServerStateStore recovered = new ServerStateStore(directory, Long.MAX_VALUE)) {
+			assertEquals(2, recovered.recover());
+			recovered.attach(after);
+
+			// A new connection is brought up to date with the most recently played game
+			Client client = new Client(new LoopbackTransport("store-after"), false);
+			JayList<Object> inQueue = new JayList<>();
+			client.tether(inQueue);
+			while(inQueue.isEmpty())
+				Thread.sleep(5);
+			GameState latest = (GameState) inQueue.removeFirst();
+			client.close();
+
+			assertEquals(7, latest.getID());
+			for(int[] move : moves)
+				assertEquals(move[2], latest.getBoard(move[0], move[1]));
+			assertEquals(board.turnCounter(), latest.copyBoard().turnCounter());
+		} finally {
+			after.shutdown();
+		}
+	}
+
+	private static void play(ServerStateStore store, Board board, int[]... moves) {
+		for(int[] move : moves) {
+			board.set(move[0], move[1], move[2]);
+			board.setTurnCounter(board.turnCounter() + 1);
+			store.received(7, new GameState(7, board.copy()));
+		}
+	}
+
+	/*
+	 * Waits for the journaler to write and commit the moves of a game
+	 */
+	private static void awaitMoves(Path directory, int gameId, int moves) throws IOException, InterruptedException {
+		while(true) {
+			try(DirectoryStream<Path> journals = Files.newDirectoryStream(directory, "*.omj")) {
+				for(Path journal : journals) {
+					MoveJournalReader reader;
+					try {
+						reader = new MoveJournalReader(journal);
+					} catch(IOException ioe) { // Its header is not written yet
+						continue;
+					}
+					if(reader.gameId() == gameId && reader.moveCount() >= moves)
+						return;
+				}
+			}
+			Thread.sleep(5);
+		}
+	}
+}